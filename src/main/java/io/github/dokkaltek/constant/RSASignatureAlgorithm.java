@@ -0,0 +1,28 @@
+package io.github.dokkaltek.constant;
+
+/**
+ * RSA signature algorithm constant
+ */
+public enum RSASignatureAlgorithm {
+    /** RSASSA-PKCS1-v1_5 with SHA-256, used by JWT's <code>RS256</code>. */
+    PKCS1_SHA256("SHA256withRSA"),
+    /**
+     * RSASSA-PSS with SHA-256, MGF1 with SHA-256 and a 32-byte salt, used by JWT's <code>PS256</code>. It needs Java
+     * 8u261 or later, or Java 11 or later.
+     */
+    PSS_SHA256("RSASSA-PSS");
+
+    private final String algorithm;
+
+    RSASignatureAlgorithm(String algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Returns the JCA name of the algorithm.
+     * @return The algorithm name.
+     */
+    public String algorithm() {
+        return algorithm;
+    }
+}
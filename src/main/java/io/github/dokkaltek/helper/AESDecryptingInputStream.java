@@ -0,0 +1,170 @@
+package io.github.dokkaltek.helper;
+
+import io.github.dokkaltek.exception.CryptoException;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import static io.github.dokkaltek.helper.AESEncryptingOutputStream.GCM_ALGORITHM_ID;
+import static io.github.dokkaltek.helper.AESEncryptingOutputStream.HEADER_SIZE;
+import static io.github.dokkaltek.helper.AESEncryptingOutputStream.MAGIC;
+import static io.github.dokkaltek.helper.AESEncryptingOutputStream.MAX_FRAME_SIZE;
+import static io.github.dokkaltek.helper.AESEncryptingOutputStream.NONCE_SIZE;
+import static io.github.dokkaltek.helper.AESEncryptingOutputStream.TAG_SIZE;
+import static io.github.dokkaltek.helper.AESEncryptingOutputStream.VERSION;
+import static io.github.dokkaltek.helper.AESEncryptingOutputStream.frameNonce;
+
+/**
+ * Input stream that decrypts the data written by an {@link AESEncryptingOutputStream}, reading the header to know
+ * how it was encrypted and then one frame at a time, so any amount of data can be decrypted with constant memory.
+ * Each frame is authenticated before any of its plain text is returned, and a {@link CryptoException} is thrown if
+ * the data was modified, reordered or truncated, or the key doesn't match.
+ */
+public class AESDecryptingInputStream extends InputStream {
+    private static final String GCM_ALGORITHM_NAME = "AES/GCM/NoPadding";
+    private final InputStream in;
+    private final SecretKey key;
+    private final Cipher cipher;
+    private byte[] header;
+    private byte[] baseNonce;
+    private byte[] cipherBuffer;
+    private byte[] plainBuffer;
+    private int plainPosition;
+    private int plainLimit;
+    private int pendingByte = -1;
+    private long frameIndex;
+    private boolean finished;
+
+    /**
+     * Default constructor.
+     * @param in The stream to read the encrypted data from.
+     * @param key The AES key to use.
+     */
+    public AESDecryptingInputStream(InputStream in, SecretKey key) {
+        if (in == null || key == null)
+            throw new NullPointerException("The input stream and key to decrypt with must not be null");
+        this.in = in;
+        this.key = key;
+        try {
+            this.cipher = Cipher.getInstance(GCM_ALGORITHM_NAME);
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException("AES Exception", e);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        while (plainPosition == plainLimit) {
+            if (!readFrame())
+                return -1;
+        }
+        return plainBuffer[plainPosition++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException();
+        if (len == 0)
+            return 0;
+        while (plainPosition == plainLimit) {
+            if (!readFrame())
+                return -1;
+        }
+        int toCopy = Math.min(len, plainLimit - plainPosition);
+        System.arraycopy(plainBuffer, plainPosition, b, off, toCopy);
+        plainPosition += toCopy;
+        return toCopy;
+    }
+
+    @Override
+    public int available() {
+        return plainLimit - plainPosition;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Reads, authenticates and decrypts the next frame. A frame is the last one when the encrypted data ends right
+     * after it.
+     * @return True if a frame was read, false if there are no more frames.
+     * @throws IOException If the underlying stream can't be read.
+     */
+    private boolean readFrame() throws IOException {
+        if (finished)
+            return false;
+        if (header == null)
+            readHeader();
+
+        int filled = 0;
+        if (pendingByte >= 0) {
+            cipherBuffer[filled++] = (byte) pendingByte;
+            pendingByte = -1;
+        }
+        filled += readFully(cipherBuffer, filled, cipherBuffer.length - filled);
+        boolean last = filled < cipherBuffer.length || (pendingByte = in.read()) < 0;
+        if (filled < TAG_SIZE)
+            throw new CryptoException("The encrypted stream is truncated.");
+
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_SIZE * 8, frameNonce(baseNonce, frameIndex)));
+            cipher.updateAAD(header);
+            cipher.updateAAD(new byte[]{(byte) (last ? 1 : 0)});
+            plainLimit = cipher.doFinal(cipherBuffer, 0, filled, plainBuffer, 0);
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException("AES Exception", e);
+        }
+        plainPosition = 0;
+        frameIndex++;
+        finished = last;
+        return true;
+    }
+
+    /**
+     * Reads and validates the header of the encrypted stream.
+     * @throws IOException If the underlying stream can't be read.
+     */
+    private void readHeader() throws IOException {
+        byte[] bytes = new byte[HEADER_SIZE];
+        if (readFully(bytes, 0, HEADER_SIZE) < HEADER_SIZE || !Arrays.equals(MAGIC, Arrays.copyOf(bytes, 4)))
+            throw new CryptoException("The stream is not an encrypted AES stream.");
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int frameSize = buffer.getInt(8);
+        if (bytes[4] != VERSION || bytes[5] != GCM_ALGORITHM_ID || bytes[6] != NONCE_SIZE || bytes[7] != TAG_SIZE ||
+                frameSize <= 0 || frameSize > MAX_FRAME_SIZE)
+            throw new CryptoException("The header of the encrypted AES stream is not supported.");
+
+        this.header = bytes;
+        this.baseNonce = Arrays.copyOfRange(bytes, HEADER_SIZE - NONCE_SIZE, HEADER_SIZE);
+        this.cipherBuffer = new byte[frameSize + TAG_SIZE];
+        this.plainBuffer = new byte[frameSize];
+    }
+
+    /**
+     * Reads from the underlying stream until the given length is read or the stream ends.
+     * @param b The array to read into.
+     * @param off The offset to read into.
+     * @param len The number of bytes to read.
+     * @return The number of bytes read.
+     * @throws IOException If the underlying stream can't be read.
+     */
+    private int readFully(byte[] b, int off, int len) throws IOException {
+        int total = 0;
+        while (total < len) {
+            int read = in.read(b, off + total, len - total);
+            if (read < 0)
+                break;
+            total += read;
+        }
+        return total;
+    }
+}
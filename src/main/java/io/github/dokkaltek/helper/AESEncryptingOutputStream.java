@@ -0,0 +1,172 @@
+package io.github.dokkaltek.helper;
+
+import io.github.dokkaltek.exception.CryptoException;
+import io.github.dokkaltek.exception.InvalidInputException;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+import static io.github.dokkaltek.util.GeneratorUtils.getNonceRandomInstance;
+
+/**
+ * Output stream that encrypts everything written to it with AES-GCM, split in frames of a fixed size, so any amount
+ * of data can be encrypted with constant memory. The output starts with a header describing how it was encrypted,
+ * so it can be decrypted with {@link AESDecryptingInputStream} and the same key only:
+ * <ul>
+ *     <li>Header of 24 bytes: magic <code>AESS</code>, version, algorithm id, nonce size, tag size, frame size (int)
+ *     and base nonce.</li>
+ *     <li>Frames: cipher text of up to a frame size of plain text, followed by its 16-byte tag. Each frame uses the
+ *     base nonce with its index XOR-ed into the last 8 bytes, and authenticates the header and whether it's the last
+ *     frame, so frames can't be reordered, removed or truncated without being detected.</li>
+ * </ul>
+ * The last frame is only written when the stream is closed, so it must always be closed. Flushing the stream
+ * doesn't write the plain text that doesn't fill a whole frame yet.
+ */
+public class AESEncryptingOutputStream extends OutputStream {
+    static final byte[] MAGIC = {'A', 'E', 'S', 'S'};
+    static final byte VERSION = 1;
+    static final byte GCM_ALGORITHM_ID = 1;
+    static final int NONCE_SIZE = 12;
+    static final int TAG_SIZE = 16;
+    static final int HEADER_SIZE = 24;
+    static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+    private static final String GCM_ALGORITHM_NAME = "AES/GCM/NoPadding";
+    private final OutputStream out;
+    private final SecretKey key;
+    private final Cipher cipher;
+    private final byte[] header;
+    private final byte[] baseNonce;
+    private final byte[] plainBuffer;
+    private final byte[] cipherBuffer;
+    private int buffered;
+    private long frameIndex;
+    private boolean closed;
+
+    /**
+     * Default constructor.
+     * @param out The stream to write the encrypted data to.
+     * @param key The AES key to use.
+     * @param frameSize The size of the plain text of each frame, in bytes, up to 16 MiB.
+     */
+    public AESEncryptingOutputStream(OutputStream out, SecretKey key, int frameSize) {
+        if (out == null || key == null)
+            throw new NullPointerException("The output stream and key to encrypt with must not be null");
+        if (frameSize <= 0 || frameSize > MAX_FRAME_SIZE)
+            throw new InvalidInputException("The frame size must be between 1 and " + MAX_FRAME_SIZE + " bytes.");
+        this.out = out;
+        this.key = key;
+        this.baseNonce = new byte[NONCE_SIZE];
+        getNonceRandomInstance().nextBytes(baseNonce);
+        this.header = ByteBuffer.allocate(HEADER_SIZE)
+                .put(MAGIC)
+                .put(VERSION)
+                .put(GCM_ALGORITHM_ID)
+                .put((byte) NONCE_SIZE)
+                .put((byte) TAG_SIZE)
+                .putInt(frameSize)
+                .put(baseNonce)
+                .array();
+        this.plainBuffer = new byte[frameSize];
+        this.cipherBuffer = new byte[frameSize + TAG_SIZE];
+        try {
+            this.cipher = Cipher.getInstance(GCM_ALGORITHM_NAME);
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException("AES Exception", e);
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (buffered == plainBuffer.length)
+            writeFrame(false);
+        plainBuffer[buffered++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (off < 0 || len < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException();
+        int written = 0;
+        while (written < len) {
+            if (buffered == plainBuffer.length)
+                writeFrame(false);
+            int toCopy = Math.min(len - written, plainBuffer.length - buffered);
+            System.arraycopy(b, off + written, plainBuffer, buffered, toCopy);
+            buffered += toCopy;
+            written += toCopy;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        out.flush();
+    }
+
+    /**
+     * Writes the last frame and closes the underlying stream.
+     * @throws IOException If the underlying stream can't be written.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            writeFrame(true);
+            out.flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Encrypts the buffered plain text into a frame and writes it, writing the header first if it's the first frame.
+     * @param last True if it's the last frame of the stream.
+     * @throws IOException If the underlying stream can't be written.
+     */
+    private void writeFrame(boolean last) throws IOException {
+        if (frameIndex == 0)
+            out.write(header);
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_SIZE * 8, frameNonce(baseNonce, frameIndex)));
+            cipher.updateAAD(header);
+            cipher.updateAAD(new byte[]{(byte) (last ? 1 : 0)});
+            int length = cipher.doFinal(plainBuffer, 0, buffered, cipherBuffer, 0);
+            out.write(cipherBuffer, 0, length);
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException("AES Exception", e);
+        }
+        buffered = 0;
+        frameIndex++;
+    }
+
+    /**
+     * Checks that the stream hasn't been closed yet.
+     * @throws IOException If the stream was closed.
+     */
+    private void ensureOpen() throws IOException {
+        if (closed)
+            throw new IOException("The stream is closed");
+    }
+
+    /**
+     * Derives the nonce of a frame by XOR-ing its index into the last 8 bytes of the base nonce.
+     * @param baseNonce The base nonce of the stream.
+     * @param frameIndex The index of the frame.
+     * @return The nonce of the frame.
+     */
+    static byte[] frameNonce(byte[] baseNonce, long frameIndex) {
+        byte[] nonce = baseNonce.clone();
+        for (int i = 0; i < 8; i++)
+            nonce[nonce.length - 1 - i] ^= (byte) (frameIndex >>> (i * 8));
+        return nonce;
+    }
+}
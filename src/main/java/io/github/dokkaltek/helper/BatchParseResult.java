@@ -0,0 +1,83 @@
+package io.github.dokkaltek.helper;
+
+import io.github.dokkaltek.exception.JSONException;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Holds the result of parsing a batch of json payloads, keeping the same order as the input batch.
+ * Items that could not be parsed will have a null value and an error registered for their index.
+ * @param <T> The type of the parsed items.
+ */
+@ToString
+@EqualsAndHashCode
+public class BatchParseResult<T> {
+    private final List<T> values;
+    private final Map<Integer, JSONException> errors;
+
+    /**
+     * Default constructor.
+     * @param values The parsed values, in the same order as the input batch.
+     * @param errors The errors found, by index of the input batch.
+     */
+    public BatchParseResult(T[] values, Map<Integer, JSONException> errors) {
+        this.values = Collections.unmodifiableList(Arrays.asList(values));
+        this.errors = Collections.unmodifiableMap(new TreeMap<>(errors));
+    }
+
+    /**
+     * Gets the parsed values in the same order as the input batch. Failed items will be null.
+     * @return The parsed values.
+     */
+    public List<T> values() {
+        return values;
+    }
+
+    /**
+     * Gets the errors found while parsing the batch by index of the input batch.
+     * @return The errors found.
+     */
+    public Map<Integer, JSONException> errors() {
+        return errors;
+    }
+
+    /**
+     * Gets the parsed value at the given index of the batch.
+     * @param index The index of the item in the input batch.
+     * @return The parsed value, or null if it was null, empty, or could not be parsed.
+     */
+    public T get(int index) {
+        return values.get(index);
+    }
+
+    /**
+     * Checks if the item at the given index of the batch failed to be parsed.
+     * @param index The index of the item in the input batch.
+     * @return True if the item failed to be parsed, false otherwise.
+     */
+    public boolean isFailed(int index) {
+        return errors.containsKey(index);
+    }
+
+    /**
+     * Checks if any of the items of the batch failed to be parsed.
+     * @return True if there was at least one failure, false otherwise.
+     */
+    public boolean hasErrors() {
+        return !errors.isEmpty();
+    }
+
+    /**
+     * Gets the number of items in the batch.
+     * @return The size of the batch.
+     */
+    public int size() {
+        return values.size();
+    }
+}
@@ -0,0 +1,147 @@
+package io.github.dokkaltek.helper;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Read-only map with string keys sized to its number of entries. Keys and values are stored side by side in a single
+ * open-addressing array, so it doesn't need an entry object per mapping like {@link java.util.HashMap} does, which
+ * makes it a lot smaller when keeping many decoded documents in memory.
+ * @param <V> The type of the values.
+ */
+public final class CompactMap<V> extends AbstractMap<String, V> {
+    private final Object[] table;
+    private final int mask;
+    private int size;
+    private Set<Entry<String, V>> entrySet;
+
+    /**
+     * Creates a map with the first entries of the given arrays. If a key is repeated, the last value is kept.
+     * @param keys The keys of the map.
+     * @param values The values of the map, at the same index as their keys.
+     * @param length The number of entries to take from the arrays.
+     */
+    public CompactMap(String[] keys, Object[] values, int length) {
+        int slots = Integer.highestOneBit(Math.max(2, length + (length >> 1)) - 1) << 1;
+        this.table = new Object[slots << 1];
+        this.mask = slots - 1;
+        for (int i = 0; i < length; i++) {
+            if (keys[i] == null)
+                throw new NullPointerException("Keys of a compact map must not be null.");
+            insert(keys[i], values[i]);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && indexOf((String) key) >= 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (!(key instanceof String))
+            return null;
+        int index = indexOf((String) key);
+        return index < 0 ? null : (V) table[index + 1];
+    }
+
+    @Override
+    public Set<Entry<String, V>> entrySet() {
+        if (entrySet == null)
+            entrySet = new EntrySet();
+        return entrySet;
+    }
+
+    /**
+     * Finds the position of a key in the table.
+     * @param key The key to find.
+     * @return The position of the key in the table, or -1 if it's not present.
+     */
+    private int indexOf(String key) {
+        int slot = spread(key.hashCode()) & mask;
+        Object current;
+        while ((current = table[slot << 1]) != null) {
+            if (current == key || current.equals(key))
+                return slot << 1;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Stores a mapping in the table, replacing the value if the key was already present.
+     * @param key The key to store.
+     * @param value The value to store.
+     */
+    private void insert(String key, Object value) {
+        int slot = spread(key.hashCode()) & mask;
+        Object current;
+        while ((current = table[slot << 1]) != null) {
+            if (current.equals(key)) {
+                table[(slot << 1) + 1] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        table[slot << 1] = key;
+        table[(slot << 1) + 1] = value;
+        size++;
+    }
+
+    /**
+     * Spreads the higher bits of the hash to the lower ones, since the table size is a power of two.
+     * @param hash The hash to spread.
+     * @return The spread hash.
+     */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Read-only view of the entries of the map.
+     */
+    private final class EntrySet extends AbstractSet<Entry<String, V>> {
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Iterator<Entry<String, V>> iterator() {
+            return new Iterator<Entry<String, V>>() {
+                private int next = advance(0);
+
+                @Override
+                public boolean hasNext() {
+                    return next < table.length;
+                }
+
+                @Override
+                @SuppressWarnings("unchecked")
+                public Entry<String, V> next() {
+                    if (!hasNext())
+                        throw new NoSuchElementException();
+                    Entry<String, V> entry = new SimpleImmutableEntry<>((String) table[next], (V) table[next + 1]);
+                    next = advance(next + 2);
+                    return entry;
+                }
+
+                private int advance(int from) {
+                    int index = from;
+                    while (index < table.length && table[index] == null)
+                        index += 2;
+                    return index;
+                }
+            };
+        }
+    }
+}
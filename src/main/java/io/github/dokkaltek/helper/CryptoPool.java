@@ -0,0 +1,193 @@
+package io.github.dokkaltek.helper;
+
+import io.github.dokkaltek.exception.InvalidInputException;
+
+import java.security.GeneralSecurityException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-thread pool of JCA engine instances, like {@link javax.crypto.Cipher} or {@link java.security.Signature}, keyed
+ * by algorithm and provider. Creating those instances goes through the provider lookup of the JCA, which is slow and
+ * synchronized, while the instances themselves are not thread-safe, so each thread keeps its own ones and reuses them
+ * between calls. Every thread keeps at most {@link #getMaxInstancesPerThread()} instances, and any other algorithm
+ * gets a new instance each time.
+ * <p>
+ * Pooled instances keep the key they were last initialized with until they are initialized again, so they should
+ * always be initialized before being used.
+ * @param <T> The type of the pooled instances.
+ */
+public final class CryptoPool<T> {
+    private final Factory<T> factory;
+    private final int maxInstancesPerThread;
+    private final ThreadLocal<Instances<T>> instances = ThreadLocal.withInitial(Instances::new);
+    private final AtomicInteger generation = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Default constructor.
+     * @param factory The factory that creates the instances, usually a reference to <code>getInstance</code>.
+     * @param maxInstancesPerThread The maximum number of instances each thread keeps.
+     */
+    public CryptoPool(Factory<T> factory, int maxInstancesPerThread) {
+        if (factory == null || maxInstancesPerThread <= 0)
+            throw new InvalidInputException("The factory must not be null and the maximum instances must be positive.");
+        this.factory = factory;
+        this.maxInstancesPerThread = maxInstancesPerThread;
+    }
+
+    /**
+     * Gets the instance of the current thread for the given algorithm, creating it with the default provider if
+     * there is none yet.
+     * @param algorithm The algorithm of the instance.
+     * @return The pooled instance.
+     * @throws GeneralSecurityException If the instance can't be created.
+     */
+    public T get(String algorithm) throws GeneralSecurityException {
+        return get(algorithm, null);
+    }
+
+    /**
+     * Gets the instance of the current thread for the given algorithm and provider, creating it if there is none yet.
+     * @param algorithm The algorithm of the instance.
+     * @param provider The name of the provider, or null to use the default one.
+     * @return The pooled instance.
+     * @throws GeneralSecurityException If the instance can't be created.
+     */
+    public T get(String algorithm, String provider) throws GeneralSecurityException {
+        Map<String, T> pooled = currentInstances();
+        String key = toKey(algorithm, provider);
+        T instance = pooled.get(key);
+        if (instance != null) {
+            hits.increment();
+            return instance;
+        }
+
+        misses.increment();
+        instance = factory.create(algorithm, provider);
+        if (pooled.size() < maxInstancesPerThread)
+            pooled.put(key, instance);
+        return instance;
+    }
+
+    /**
+     * Replaces the instance of the current thread for the given algorithm and provider with a new one, for when the
+     * pooled one can't be reused.
+     * @param algorithm The algorithm of the instance.
+     * @param provider The name of the provider, or null to use the default one.
+     * @return The new instance.
+     * @throws GeneralSecurityException If the instance can't be created.
+     */
+    public T renew(String algorithm, String provider) throws GeneralSecurityException {
+        Map<String, T> pooled = currentInstances();
+        String key = toKey(algorithm, provider);
+        misses.increment();
+        T instance = factory.create(algorithm, provider);
+        if (pooled.containsKey(key) || pooled.size() < maxInstancesPerThread)
+            pooled.put(key, instance);
+        return instance;
+    }
+
+    /**
+     * Discards the pooled instances of every thread. Each thread drops its instances the next time it uses the pool.
+     */
+    public void clear() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Gets the number of times a pooled instance was reused.
+     * @return The number of hits.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of times a new instance had to be created.
+     * @return The number of misses.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Gets the ratio of calls that reused a pooled instance.
+     * @return The hit rate, between 0 and 1, or 0 if the pool hasn't been used yet.
+     */
+    public double getHitRate() {
+        long currentHits = hits.sum();
+        long total = currentHits + misses.sum();
+        return total == 0 ? 0 : (double) currentHits / total;
+    }
+
+    /**
+     * Resets the hit and miss counters.
+     */
+    public void resetStatistics() {
+        hits.reset();
+        misses.reset();
+    }
+
+    /**
+     * Gets the maximum number of instances each thread keeps.
+     * @return The maximum number of instances per thread.
+     */
+    public int getMaxInstancesPerThread() {
+        return maxInstancesPerThread;
+    }
+
+    /**
+     * Gets the instances of the current thread, dropping them if the pool was cleared since they were created.
+     * @return The instances of the current thread.
+     */
+    private Map<String, T> currentInstances() {
+        Instances<T> current = instances.get();
+        int currentGeneration = generation.get();
+        if (current.generation != currentGeneration) {
+            current.byKey.clear();
+            current.generation = currentGeneration;
+        }
+        return current.byKey;
+    }
+
+    /**
+     * Builds the key of an instance.
+     * @param algorithm The algorithm of the instance.
+     * @param provider The name of the provider, or null for the default one.
+     * @return The key of the instance.
+     */
+    private static String toKey(String algorithm, String provider) {
+        if (algorithm == null)
+            throw new InvalidInputException("The algorithm must not be null.");
+        return provider == null ? algorithm : algorithm + '@' + provider;
+    }
+
+    /**
+     * Creates the instances of the pool.
+     * @param <T> The type of the instances.
+     */
+    @FunctionalInterface
+    public interface Factory<T> {
+        /**
+         * Creates a new instance.
+         * @param algorithm The algorithm of the instance.
+         * @param provider The name of the provider, or null to use the default one.
+         * @return The new instance.
+         * @throws GeneralSecurityException If the instance can't be created.
+         */
+        T create(String algorithm, String provider) throws GeneralSecurityException;
+    }
+
+    /**
+     * Instances of a thread, with the generation of the pool they belong to.
+     * @param <T> The type of the instances.
+     */
+    private static final class Instances<T> {
+        private final Map<String, T> byKey = new HashMap<>();
+        private int generation;
+    }
+}
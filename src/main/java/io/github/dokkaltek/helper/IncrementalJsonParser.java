@@ -0,0 +1,253 @@
+package io.github.dokkaltek.helper;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+import com.fasterxml.jackson.core.async.NonBlockingInputFeeder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import io.github.dokkaltek.exception.InvalidInputException;
+import io.github.dokkaltek.exception.JSONException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Push-style json parser that accepts the input in chunks as they arrive, like on non-blocking servers, and returns
+ * the decoded values as soon as they are complete. Only the tokens of the value being decoded are kept in memory.
+ * <ul>
+ *     <li>If the root of the input is an array, each of its elements is decoded and returned on its own, unless the
+ *     target type is an array or a collection.</li>
+ *     <li>Any other root value is decoded and returned once it is complete. Several root values separated by
+ *     whitespace are supported too, like in line-delimited json.</li>
+ * </ul>
+ * If a value can't be decoded, the values completed before it in the same chunk are still returned, and the failure
+ * is thrown by the next call instead. Instances are not thread-safe, and are meant to be used for a single input,
+ * like the body of a request.
+ * @param <T> The type of the decoded values.
+ */
+public class IncrementalJsonParser<T> implements Closeable {
+    private final ObjectReader reader;
+    private final JsonParser parser;
+    private final NonBlockingInputFeeder feeder;
+    private final boolean unwrapRootArray;
+    private TokenBuffer pendingValue;
+    private int depth;
+    private boolean inRootArray;
+    private long fedBytes;
+    private long completedBytes;
+    private long maxPendingBytes = Long.MAX_VALUE;
+    private RuntimeException failure;
+
+    /**
+     * Default constructor.
+     * @param mapper The object mapper to use for decoding.
+     * @param clazz The class of the decoded values.
+     * @param byteBufferInput True to use a {@link ByteBufferFeeder}, which avoids copies for direct buffers, or false
+     *                        to use a {@link ByteArrayFeeder}.
+     */
+    public IncrementalJsonParser(ObjectMapper mapper, Class<T> clazz, boolean byteBufferInput) {
+        if (mapper == null || clazz == null)
+            throw new InvalidInputException("The given mapper or class was null.");
+        try {
+            this.parser = byteBufferInput ? mapper.getFactory().createNonBlockingByteBufferParser() :
+                    mapper.getFactory().createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+        this.feeder = parser.getNonBlockingInputFeeder();
+        this.reader = mapper.readerFor(clazz);
+        this.unwrapRootArray = !clazz.isArray() && !Collection.class.isAssignableFrom(clazz);
+    }
+
+    /**
+     * Sets the maximum number of bytes that can be fed without completing a value, to cap the memory used by a
+     * single input. The bytes left after the last completed value and the chunk being fed are checked before feeding
+     * it, so chunks must be smaller than this.
+     * @param maxPendingBytes The maximum number of bytes.
+     */
+    public void setMaxPendingBytes(long maxPendingBytes) {
+        if (maxPendingBytes <= 0)
+            throw new InvalidInputException("The maximum pending bytes must be greater than 0.");
+        this.maxPendingBytes = maxPendingBytes;
+    }
+
+    /**
+     * Feeds a chunk of the input.
+     * @param chunk The chunk to feed.
+     * @return The values completed with this chunk, which may be empty.
+     * @throws JSONException If the input is not valid json, or a value can't be decoded.
+     */
+    public List<T> feed(byte[] chunk) {
+        if (chunk == null)
+            return Collections.emptyList();
+        return feed(chunk, 0, chunk.length);
+    }
+
+    /**
+     * Feeds a chunk of the input. The chunk is fully consumed when this method returns.
+     * @param chunk The array holding the chunk to feed.
+     * @param offset The offset of the chunk in the array.
+     * @param length The length of the chunk.
+     * @return The values completed with this chunk, which may be empty.
+     * @throws JSONException If the input is not valid json, or a value can't be decoded.
+     */
+    public List<T> feed(byte[] chunk, int offset, int length) {
+        if (chunk == null || length == 0)
+            return Collections.emptyList();
+        checkBeforeFeeding(length);
+        try {
+            if (feeder instanceof ByteArrayFeeder)
+                ((ByteArrayFeeder) feeder).feedInput(chunk, offset, offset + length);
+            else
+                ((ByteBufferFeeder) feeder).feedInput(ByteBuffer.wrap(chunk, offset, length));
+            return drain(length);
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+    }
+
+    /**
+     * Feeds a chunk of the input from the position to the limit of the buffer. The chunk is fully consumed when this
+     * method returns, so the buffer can be reused afterward.
+     * @param chunk The buffer holding the chunk to feed.
+     * @return The values completed with this chunk, which may be empty.
+     * @throws JSONException If the input is not valid json, or a value can't be decoded.
+     */
+    public List<T> feed(ByteBuffer chunk) {
+        if (chunk == null || !chunk.hasRemaining())
+            return Collections.emptyList();
+        int length = chunk.remaining();
+        checkBeforeFeeding(length);
+        try {
+            if (feeder instanceof ByteBufferFeeder) {
+                ((ByteBufferFeeder) feeder).feedInput(chunk);
+            } else if (chunk.hasArray()) {
+                int start = chunk.arrayOffset() + chunk.position();
+                ((ByteArrayFeeder) feeder).feedInput(chunk.array(), start, start + length);
+            } else {
+                byte[] copy = new byte[length];
+                chunk.duplicate().get(copy);
+                ((ByteArrayFeeder) feeder).feedInput(copy, 0, length);
+            }
+            List<T> values = drain(length);
+            // Moved through Buffer, since the ByteBuffer override doesn't exist on Java 8
+            ((Buffer) chunk).position(chunk.limit());
+            return values;
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+    }
+
+    /**
+     * Signals that there is no more input.
+     * @return The values completed at the end of the input, which may be empty.
+     * @throws JSONException If the input ended in the middle of a value.
+     */
+    public List<T> endOfInput() {
+        checkBeforeFeeding(0);
+        feeder.endOfInput();
+        try {
+            List<T> values = drain(0);
+            if (pendingValue != null || inRootArray)
+                throw new JSONException(new IOException("Unexpected end of input in the middle of a json value."));
+            return values;
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+    }
+
+    /**
+     * Checks if there is a value that has been partially fed.
+     * @return True if there is a value in progress, false otherwise.
+     */
+    public boolean hasPendingValue() {
+        return pendingValue != null;
+    }
+
+    @Override
+    public void close() {
+        try {
+            parser.close();
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+    }
+
+    /**
+     * Throws the failure left by the previous chunk, if any, and checks that feeding the given number of bytes won't
+     * exceed the maximum pending bytes.
+     * @param length The number of bytes to feed.
+     */
+    private void checkBeforeFeeding(int length) {
+        if (failure != null) {
+            RuntimeException previousFailure = failure;
+            failure = null;
+            throw previousFailure;
+        }
+        if (fedBytes - completedBytes + length > maxPendingBytes)
+            throw new InvalidInputException("The json value being parsed exceeded the maximum of " +
+                    maxPendingBytes + " bytes.");
+    }
+
+    /**
+     * Reads all the tokens available in the fed input, decoding every value that gets completed. If a value fails
+     * after others were completed, these are returned and the failure is kept for the next call.
+     * @param length The number of bytes just fed.
+     * @return The completed values.
+     * @throws IOException If the input is not valid json or a value can't be decoded.
+     */
+    private List<T> drain(int length) throws IOException {
+        fedBytes += length;
+        List<T> values = Collections.emptyList();
+        try {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                if (depth == 0 && pendingValue == null) {
+                    if (!inRootArray && unwrapRootArray && token == JsonToken.START_ARRAY) {
+                        inRootArray = true;
+                        completedBytes = parser.currentLocation().getByteOffset();
+                        continue;
+                    }
+                    if (inRootArray && token == JsonToken.END_ARRAY) {
+                        inRootArray = false;
+                        completedBytes = parser.currentLocation().getByteOffset();
+                        continue;
+                    }
+                }
+
+                if (pendingValue == null)
+                    pendingValue = new TokenBuffer(parser);
+                pendingValue.copyCurrentEvent(parser);
+                if (token.isStructStart())
+                    depth++;
+                else if (token.isStructEnd())
+                    depth--;
+
+                if (depth == 0) {
+                    TokenBuffer completedValue = pendingValue;
+                    pendingValue = null;
+                    completedBytes = parser.currentLocation().getByteOffset();
+                    if (values.isEmpty())
+                        values = new ArrayList<>();
+                    try (JsonParser valueParser = completedValue.asParser()) {
+                        values.add(reader.readValue(valueParser));
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            if (values.isEmpty())
+                throw e;
+            failure = e instanceof IOException ? new JSONException(e) : (RuntimeException) e;
+        }
+        return values;
+    }
+}
@@ -0,0 +1,197 @@
+package io.github.dokkaltek.helper;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.github.dokkaltek.exception.InvalidInputException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiled accessor for a nested value of a {@link JsonNode} given by a json pointer, like <code>/a/b/0/c</code>.
+ * The path is parsed only once, and resolving it only does one lookup per level, returning primitive values without
+ * boxing them. Accessors are immutable and thread-safe, so they can be compiled once and reused for every node.
+ * @see <a href="https://datatracker.ietf.org/doc/html/rfc6901">RFC 6901</a>
+ */
+public final class JsonAccessor {
+    private static final int MAX_CACHED_ACCESSORS = 4096;
+    private static final ConcurrentHashMap<String, JsonAccessor> CACHE = new ConcurrentHashMap<>();
+    private final String path;
+    private final String[] names;
+    private final int[] indexes;
+
+    private JsonAccessor(String path, String[] names, int[] indexes) {
+        this.path = path;
+        this.names = names;
+        this.indexes = indexes;
+    }
+
+    /**
+     * Compiles a json pointer into an accessor, reusing an already compiled one for the same path if there is one.
+     * @param path The json pointer, like <code>/a/b/0/c</code>. An empty path points to the node itself.
+     * @return The compiled accessor.
+     * @throws InvalidInputException If the path is null or not a valid json pointer.
+     */
+    public static JsonAccessor compile(String path) {
+        if (path == null)
+            throw new InvalidInputException("The given json path was null.");
+        JsonAccessor accessor = CACHE.get(path);
+        if (accessor != null)
+            return accessor;
+
+        accessor = parse(path);
+        if (CACHE.size() >= MAX_CACHED_ACCESSORS)
+            CACHE.clear();
+        CACHE.putIfAbsent(path, accessor);
+        return accessor;
+    }
+
+    /**
+     * Gets the path this accessor was compiled from.
+     * @return The json pointer of this accessor.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Resolves the path on the given node.
+     * @param node The node to resolve the path on.
+     * @return The node at the path, or null if the path doesn't exist.
+     */
+    public JsonNode resolve(JsonNode node) {
+        JsonNode current = node;
+        for (int i = 0; i < names.length && current != null; i++) {
+            if (current.isObject())
+                current = current.get(names[i]);
+            else if (current.isArray() && indexes[i] >= 0)
+                current = current.get(indexes[i]);
+            else
+                return null;
+        }
+        return current == null || current.isMissingNode() ? null : current;
+    }
+
+    /**
+     * Checks if the path exists on the given node, even if its value is a json null.
+     * @param node The node to check.
+     * @return True if the path exists, false otherwise.
+     */
+    public boolean exists(JsonNode node) {
+        return resolve(node) != null;
+    }
+
+    /**
+     * Gets the value at the path as a string.
+     * @param node The node to resolve the path on.
+     * @param defaultValue The value to return if the path doesn't exist or is a json null.
+     * @return The value at the path, or the default value.
+     */
+    public String getString(JsonNode node, String defaultValue) {
+        JsonNode value = resolve(node);
+        return value == null || value.isNull() ? defaultValue : value.asText();
+    }
+
+    /**
+     * Gets the value at the path as an int.
+     * @param node The node to resolve the path on.
+     * @param defaultValue The value to return if the path doesn't exist or is a json null.
+     * @return The value at the path, or the default value.
+     */
+    public int getInt(JsonNode node, int defaultValue) {
+        JsonNode value = resolve(node);
+        return value == null || value.isNull() ? defaultValue : value.asInt(defaultValue);
+    }
+
+    /**
+     * Gets the value at the path as a long.
+     * @param node The node to resolve the path on.
+     * @param defaultValue The value to return if the path doesn't exist or is a json null.
+     * @return The value at the path, or the default value.
+     */
+    public long getLong(JsonNode node, long defaultValue) {
+        JsonNode value = resolve(node);
+        return value == null || value.isNull() ? defaultValue : value.asLong(defaultValue);
+    }
+
+    /**
+     * Gets the value at the path as a double.
+     * @param node The node to resolve the path on.
+     * @param defaultValue The value to return if the path doesn't exist or is a json null.
+     * @return The value at the path, or the default value.
+     */
+    public double getDouble(JsonNode node, double defaultValue) {
+        JsonNode value = resolve(node);
+        return value == null || value.isNull() ? defaultValue : value.asDouble(defaultValue);
+    }
+
+    /**
+     * Gets the value at the path as a boolean.
+     * @param node The node to resolve the path on.
+     * @param defaultValue The value to return if the path doesn't exist or is a json null.
+     * @return The value at the path, or the default value.
+     */
+    public boolean getBoolean(JsonNode node, boolean defaultValue) {
+        JsonNode value = resolve(node);
+        return value == null || value.isNull() ? defaultValue : value.asBoolean(defaultValue);
+    }
+
+    @Override
+    public String toString() {
+        return "JsonAccessor(" + path + ")";
+    }
+
+    /**
+     * Parses a json pointer into its segments.
+     * @param path The json pointer to parse.
+     * @return The accessor for the path.
+     */
+    private static JsonAccessor parse(String path) {
+        if (path.isEmpty())
+            return new JsonAccessor(path, new String[0], new int[0]);
+        if (path.charAt(0) != '/')
+            throw new InvalidInputException("The json path '" + path + "' must start with '/'.");
+
+        List<String> segments = new ArrayList<>();
+        StringBuilder segment = new StringBuilder();
+        for (int i = 1; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '/') {
+                segments.add(segment.toString());
+                segment.setLength(0);
+            } else if (c == '~') {
+                char next = i + 1 < path.length() ? path.charAt(++i) : ' ';
+                if (next != '0' && next != '1')
+                    throw new InvalidInputException("Invalid escape sequence in the json path '" + path + "'.");
+                segment.append(next == '0' ? '~' : '/');
+            } else {
+                segment.append(c);
+            }
+        }
+        segments.add(segment.toString());
+
+        String[] names = segments.toArray(new String[0]);
+        int[] indexes = new int[names.length];
+        for (int i = 0; i < names.length; i++)
+            indexes[i] = parseIndex(names[i]);
+        return new JsonAccessor(path, names, indexes);
+    }
+
+    /**
+     * Parses a segment of the path as an array index.
+     * @param segment The segment to parse.
+     * @return The index, or -1 if the segment is not a valid array index.
+     */
+    private static int parseIndex(String segment) {
+        if (segment.isEmpty() || segment.length() > 9 || (segment.length() > 1 && segment.charAt(0) == '0'))
+            return -1;
+        int index = 0;
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+            index = index * 10 + (c - '0');
+        }
+        return index;
+    }
+}
@@ -0,0 +1,249 @@
+package io.github.dokkaltek.helper;
+
+import io.github.dokkaltek.exception.GenericException;
+import io.github.dokkaltek.exception.InvalidInputException;
+import io.github.dokkaltek.util.RSAUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.Key;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static io.github.dokkaltek.constant.ErrorStatus.INTERNAL_SERVER_ERROR;
+
+/**
+ * Thread-safe cache of RSA keys read from PEM files, so components that load their keys on every request only parse
+ * them once. Each key is cached with the modification time and size of its file, and it's read again if any of them
+ * changes, so rotated keys are picked up.
+ * <p>
+ * Directories can also be watched with a {@link WatchService}. The keys of a watched directory are then trusted
+ * without checking their files, and every change in the directory drops them, which also covers secrets mounted
+ * through symbolic links that are swapped on rotation. The watcher runs on a daemon thread until the cache is closed.
+ */
+public class KeyStoreCache implements Closeable {
+    private final int maxEntries;
+    private final Map<Path, CachedKey> keys = new ConcurrentHashMap<>();
+    private final Map<Path, WatchKey> watchedDirectories = new ConcurrentHashMap<>();
+    private final AtomicLong invalidations = new AtomicLong();
+    private WatchService watchService;
+
+    /**
+     * Default constructor, which caches up to 1024 keys.
+     */
+    public KeyStoreCache() {
+        this(1024);
+    }
+
+    /**
+     * Constructor with the maximum number of keys to cache.
+     * @param maxEntries The maximum number of keys to cache. The cache is cleared when it's full.
+     */
+    public KeyStoreCache(int maxEntries) {
+        if (maxEntries <= 0)
+            throw new InvalidInputException("The maximum number of keys must be greater than 0.");
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Gets the public key of the given file, reading it only if it's not cached or the file changed.
+     * @param file The PEM file with the public key.
+     * @return The public key.
+     */
+    public PublicKey getPublicKey(File file) {
+        return getKey(file, PublicKey.class, RSAUtils::readPublicKeyFromFile);
+    }
+
+    /**
+     * Gets the private key of the given file, reading it only if it's not cached or the file changed.
+     * @param file The PEM file with the private key.
+     * @return The private key.
+     */
+    public PrivateKey getPrivateKey(File file) {
+        return getKey(file, PrivateKey.class, RSAUtils::readPrivateKeyFromFile);
+    }
+
+    /**
+     * Starts watching a directory, dropping the cached keys of its files whenever anything in it changes.
+     * @param directory The directory to watch.
+     */
+    public synchronized void watch(File directory) {
+        if (directory == null || !directory.isDirectory())
+            throw new InvalidInputException("The given directory to watch doesn't exist.");
+        Path path = normalize(directory);
+        if (watchedDirectories.containsKey(path))
+            return;
+
+        try {
+            if (watchService == null) {
+                watchService = FileSystems.getDefault().newWatchService();
+                Thread watcher = new Thread(this::processEvents, "key-store-cache-watcher");
+                watcher.setDaemon(true);
+                watcher.start();
+            }
+            watchedDirectories.put(path, path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE));
+            invalidateDirectory(path);
+        } catch (IOException e) {
+            throw new GenericException("Error watching key directory", e, INTERNAL_SERVER_ERROR.code());
+        }
+    }
+
+    /**
+     * Removes the key of the given file from the cache.
+     * @param file The file of the key.
+     */
+    public void invalidate(File file) {
+        if (file != null)
+            keys.remove(normalize(file));
+    }
+
+    /**
+     * Removes all the keys from the cache.
+     */
+    public void clear() {
+        keys.clear();
+    }
+
+    /**
+     * Gets the number of cached keys.
+     * @return The number of cached keys.
+     */
+    public int size() {
+        return keys.size();
+    }
+
+    /**
+     * Stops watching the directories and clears the cache.
+     */
+    @Override
+    public synchronized void close() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                throw new GenericException("Error closing key directory watcher", e, INTERNAL_SERVER_ERROR.code());
+            } finally {
+                watchService = null;
+                watchedDirectories.clear();
+            }
+        }
+        keys.clear();
+    }
+
+    /**
+     * Gets a key from the cache, reading it with the given reader if it's missing or its file changed.
+     * @param file The file of the key.
+     * @param type The type of the key.
+     * @param reader The function that reads the key from its file.
+     * @return The key.
+     */
+    private <K extends Key> K getKey(File file, Class<K> type, Function<File, K> reader) {
+        if (file == null)
+            throw new NullPointerException("The given file was null.");
+        Path path = normalize(file);
+        CachedKey cached = keys.get(path);
+        if (cached != null && !type.isInstance(cached.key))
+            cached = null;
+        if (cached != null && watchedDirectories.containsKey(path.getParent()))
+            return type.cast(cached.key);
+
+        long invalidationsBefore = invalidations.get();
+        BasicFileAttributes attributes = readAttributes(path);
+        if (cached != null && cached.matches(attributes))
+            return type.cast(cached.key);
+
+        K key = reader.apply(file);
+        if (keys.size() >= maxEntries)
+            keys.clear();
+        CachedKey entry = new CachedKey(key, attributes.lastModifiedTime().toMillis(), attributes.size());
+        keys.put(path, entry);
+        // The directory may have changed while the key was being read, so the entry can't be trusted
+        if (invalidations.get() != invalidationsBefore)
+            keys.remove(path, entry);
+        return key;
+    }
+
+    /**
+     * Waits for changes in the watched directories and drops their keys, until the watch service is closed.
+     */
+    private void processEvents() {
+        WatchService service = watchService;
+        try {
+            while (true) {
+                WatchKey watchKey = service.take();
+                watchKey.pollEvents();
+                invalidateDirectory((Path) watchKey.watchable());
+                if (!watchKey.reset())
+                    watchedDirectories.remove((Path) watchKey.watchable());
+            }
+        } catch (ClosedWatchServiceException e) {
+            // The cache was closed
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Drops the cached keys of the files of a directory.
+     * @param directory The directory.
+     */
+    private void invalidateDirectory(Path directory) {
+        invalidations.incrementAndGet();
+        keys.keySet().removeIf(path -> directory.equals(path.getParent()));
+    }
+
+    /**
+     * Reads the attributes used to detect changes in a key file.
+     * @param path The path of the file.
+     * @return The attributes of the file.
+     */
+    private static BasicFileAttributes readAttributes(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            throw new GenericException("Error reading key from file", e, INTERNAL_SERVER_ERROR.code());
+        }
+    }
+
+    /**
+     * Gets the absolute and normalized path of a file, used as key of the cache.
+     * @param file The file.
+     * @return The normalized path.
+     */
+    private static Path normalize(File file) {
+        return file.toPath().toAbsolutePath().normalize();
+    }
+
+    /**
+     * Key cached with the state of its file when it was read.
+     */
+    private static final class CachedKey {
+        private final Key key;
+        private final long lastModified;
+        private final long size;
+
+        private CachedKey(Key key, long lastModified, long size) {
+            this.key = key;
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+
+        private boolean matches(BasicFileAttributes attributes) {
+            return attributes.lastModifiedTime().toMillis() == lastModified && attributes.size() == size;
+        }
+    }
+}
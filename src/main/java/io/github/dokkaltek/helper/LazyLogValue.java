@@ -0,0 +1,46 @@
+package io.github.dokkaltek.helper;
+
+import java.util.function.Supplier;
+
+/**
+ * Log argument whose text is only computed when it's written, the first time its {@link #toString()} is called, and
+ * then kept. Passed to a parameterized logger, like <code>log.debug("Request: {}", lazyValue)</code>, the work of
+ * building the text is skipped for messages of disabled levels. It's safe to share between threads, although two of
+ * them could compute the text at the same time the first time.
+ */
+public final class LazyLogValue {
+    private final Supplier<String> supplier;
+    private volatile String value;
+
+    /**
+     * Default constructor.
+     * @param supplier The supplier of the text, called at most once in most cases.
+     */
+    public LazyLogValue(Supplier<String> supplier) {
+        if (supplier == null)
+            throw new NullPointerException("The supplier of a lazy log value must not be null.");
+        this.supplier = supplier;
+    }
+
+    /**
+     * Checks if the text has already been computed.
+     * @return True if the text was computed, false otherwise.
+     */
+    public boolean isComputed() {
+        return value != null;
+    }
+
+    /**
+     * Gets the text, computing it the first time.
+     * @return The text, or <code>null</code> as text if the supplier returned null.
+     */
+    @Override
+    public String toString() {
+        String result = value;
+        if (result == null) {
+            result = String.valueOf(supplier.get());
+            value = result;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,196 @@
+package io.github.dokkaltek.helper;
+
+import io.github.dokkaltek.constant.literal.SpecialChars;
+import io.github.dokkaltek.util.LoggingUtils;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static io.github.dokkaltek.util.StringUtils.isBlankOrNull;
+
+/**
+ * Reusable masker of the sensitive fields of log messages, like <code>password=123456</code>. The masking regex of
+ * its fields is generated and compiled only once, when it's created, so it should be kept and reused for every
+ * message, instead of calling the static methods of {@link LoggingUtils}, which have to look it up in a cache.
+ * <p>
+ * The fields are parts of a regex, like in {@link LoggingUtils#generateMaskingRegex(String, String...)}, and the
+ * value of a field ends at the first whitespace, or before the separator if it's the last char.
+ */
+public final class LogMasker {
+    private static final String MASKED_FIELD = "*****";
+    private final Pattern pattern;
+    private final int valueGroup;
+
+    /**
+     * Creates a masker of the given fields, whose values can't end with a comma.
+     * @param fieldsToMask The fields to mask.
+     * @return The masker.
+     */
+    public static LogMasker of(String... fieldsToMask) {
+        return new LogMasker(SpecialChars.COMMA, fieldsToMask);
+    }
+
+    /**
+     * Creates a masker of the given fields.
+     * @param separator The separator that can't end the value of a field. If empty it defaults to a comma.
+     * @param fieldsToMask The fields to mask.
+     */
+    public LogMasker(String separator, String... fieldsToMask) {
+        String maskRegex = LoggingUtils.generateMaskingRegex(separator, fieldsToMask);
+        this.pattern = isBlankOrNull(maskRegex) ? null : Pattern.compile(maskRegex);
+        // The fields can have groups of their own, so the value is found by being the last group
+        this.valueGroup = pattern == null ? 0 : pattern.matcher(SpecialChars.EMPTY_STRING).groupCount();
+    }
+
+    /**
+     * Checks if the masker has any field to mask.
+     * @return True if there are no fields to mask, false otherwise.
+     */
+    public boolean isEmpty() {
+        return pattern == null;
+    }
+
+    /**
+     * Masks the whole value of the fields of a message.
+     * @param message The message to mask.
+     * @return The masked message, like <code>password=*****</code>.
+     * @see LoggingUtils#maskField(String, String...)
+     */
+    public String mask(String message) {
+        if (isBlankOrNull(message))
+            return SpecialChars.EMPTY_STRING;
+        return replaceValues(message, (result, value, valueStart, valueEnd) -> result.append(MASKED_FIELD));
+    }
+
+    /**
+     * Masks the values of the fields of a message in a specific range of characters.
+     * @param message The message to mask.
+     * @param start The start of the range.
+     * @param end The end of the range.
+     * @return The masked message.
+     * @see LoggingUtils#maskFieldRange(String, int, int, String...)
+     */
+    public String maskRange(String message, int start, int end) {
+        if (isBlankOrNull(message))
+            return SpecialChars.EMPTY_STRING;
+        if (start >= end)
+            return message;
+        return replaceValues(message, (result, value, valueStart, valueEnd) ->
+                appendRange(result, value, valueStart, valueEnd, start, end));
+    }
+
+    /**
+     * Masks the values of the fields of a message up to the last occurrence of a character.
+     * @param message The message to mask.
+     * @param charToStopAt The character to stop the masking at.
+     * @return The masked message.
+     * @see LoggingUtils#maskFieldUntilChar(String, char, String...)
+     */
+    public String maskUntilChar(String message, char charToStopAt) {
+        if (isBlankOrNull(message))
+            return SpecialChars.EMPTY_STRING;
+        return replaceValues(message, (result, value, valueStart, valueEnd) -> {
+            int charIndex = value.lastIndexOf(charToStopAt, valueEnd - 1);
+            if (charIndex > valueStart) {
+                appendMask(result, charIndex - valueStart);
+                result.append(value, charIndex, valueEnd);
+            } else {
+                appendMask(result, valueEnd - valueStart);
+            }
+        });
+    }
+
+    /**
+     * Masks the values of the fields of a message up to the last occurrence of a character, and then in a specific
+     * range after said character.
+     * @param message The message to mask.
+     * @param charToStopAt The character to stop the masking at.
+     * @param start The start of the range after the character to stop at.
+     * @param end The end of the range after the character to stop at.
+     * @return The masked message.
+     * @see LoggingUtils#maskFieldUntilCharWithRange(String, char, int, int, String...)
+     */
+    public String maskUntilCharWithRange(String message, char charToStopAt, int start, int end) {
+        if (isBlankOrNull(message))
+            return SpecialChars.EMPTY_STRING;
+        return replaceValues(message, (result, value, valueStart, valueEnd) -> {
+            int charIndex = value.lastIndexOf(charToStopAt, valueEnd - 1);
+            if (charIndex > valueStart) {
+                appendMask(result, charIndex - valueStart);
+                result.append(charToStopAt);
+                if (start < end)
+                    appendRange(result, value, charIndex + 1, valueEnd, start, end);
+                else
+                    result.append(value, charIndex + 1, valueEnd);
+            } else {
+                appendMask(result, valueEnd - valueStart);
+            }
+        });
+    }
+
+    /**
+     * Replaces the value of every field found in a message in a single pass, copying the rest of the message as is.
+     * Only the matched occurrences are replaced, even if the same field and value appear elsewhere.
+     * @param message The message to mask.
+     * @param masking The masking to append instead of each value.
+     * @return The masked message, or the same message if there was nothing to mask.
+     */
+    private String replaceValues(String message, ValueMasking masking) {
+        if (pattern == null)
+            return message;
+        Matcher matcher = pattern.matcher(message);
+        if (!matcher.find())
+            return message;
+
+        StringBuilder result = new StringBuilder(message.length() + MASKED_FIELD.length());
+        int copied = 0;
+        do {
+            int valueStart = matcher.start(valueGroup);
+            int valueEnd = matcher.end(valueGroup);
+            result.append(message, copied, valueStart);
+            masking.append(result, message, valueStart, valueEnd);
+            copied = valueEnd;
+        } while (matcher.find());
+        return result.append(message, copied, message.length()).toString();
+    }
+
+    /**
+     * Appends part of a value, masking the given range of it.
+     * @param result The builder to append to.
+     * @param value The string with the value.
+     * @param valueStart The start of the value.
+     * @param valueEnd The end of the value.
+     * @param start The start of the range to mask, relative to the value.
+     * @param end The end of the range to mask, relative to the value.
+     */
+    private static void appendRange(StringBuilder result, String value, int valueStart, int valueEnd, int start,
+                                    int end) {
+        int length = valueEnd - valueStart;
+        if (length <= start) {
+            result.append(value, valueStart, valueEnd);
+            return;
+        }
+        int actualEnd = Math.min(length, end);
+        result.append(value, valueStart, valueStart + start);
+        appendMask(result, actualEnd - start);
+        result.append(value, valueStart + actualEnd, valueEnd);
+    }
+
+    /**
+     * Appends the given number of asterisks.
+     * @param result The builder to append to.
+     * @param count The number of asterisks.
+     */
+    private static void appendMask(StringBuilder result, int count) {
+        for (int i = 0; i < count; i++)
+            result.append('*');
+    }
+
+    /**
+     * Masking of the value of a field, appended to the masked message.
+     */
+    @FunctionalInterface
+    private interface ValueMasking {
+        void append(StringBuilder result, String value, int valueStart, int valueEnd);
+    }
+}
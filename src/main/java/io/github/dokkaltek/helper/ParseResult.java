@@ -0,0 +1,109 @@
+package io.github.dokkaltek.helper;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+import java.util.Optional;
+
+/**
+ * Result of a parsing operation that doesn't throw on failure. It can hold a parsed value, the error that prevented
+ * the parsing, or nothing at all if there was no input to parse.
+ * @param <T> The type of the parsed value.
+ */
+@ToString
+@EqualsAndHashCode
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public final class ParseResult<T> {
+    private static final ParseResult<?> EMPTY = new ParseResult<>(null, null, false);
+    private final T value;
+    private final Exception error;
+    private final boolean parsed;
+
+    /**
+     * Creates a successful result.
+     * @param value The parsed value, which can be null if the input was a json null.
+     * @return The successful result.
+     */
+    public static <X> ParseResult<X> success(X value) {
+        return new ParseResult<>(value, null, true);
+    }
+
+    /**
+     * Creates a failed result.
+     * @param error The error that prevented the parsing.
+     * @return The failed result.
+     */
+    public static <X> ParseResult<X> failure(Exception error) {
+        if (error == null)
+            throw new NullPointerException("The error of a failed parse result must not be null.");
+        return new ParseResult<>(null, error, false);
+    }
+
+    /**
+     * Returns the result for a null or empty input, which is neither successful nor failed.
+     * @return The empty result.
+     */
+    @SuppressWarnings("unchecked")
+    public static <X> ParseResult<X> empty() {
+        return (ParseResult<X>) EMPTY;
+    }
+
+    /**
+     * Checks if the input was parsed successfully.
+     * @return True if the input was parsed, false otherwise.
+     */
+    public boolean isSuccess() {
+        return parsed;
+    }
+
+    /**
+     * Checks if the input couldn't be parsed.
+     * @return True if there was an error parsing the input, false otherwise.
+     */
+    public boolean isFailure() {
+        return error != null;
+    }
+
+    /**
+     * Checks if there was no input to parse.
+     * @return True if the input was null or empty, false otherwise.
+     */
+    public boolean isEmpty() {
+        return !parsed && error == null;
+    }
+
+    /**
+     * Gets the parsed value.
+     * @return The parsed value, or null if the result is not successful.
+     */
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * Gets the error that prevented the parsing.
+     * @return The error, or null if the result is not a failure.
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    /**
+     * Gets the parsed value if the result is successful, or the default value otherwise.
+     * @param defaultValue The value to return if the result is empty or failed.
+     * @return The parsed value or the default one.
+     */
+    public T orElse(T defaultValue) {
+        return parsed ? value : defaultValue;
+    }
+
+    /**
+     * Gets the parsed value as an {@link Optional}.
+     * @return The optional with the parsed value, or an empty one if there is no value.
+     */
+    public Optional<T> toOptional() {
+        return Optional.ofNullable(value);
+    }
+}
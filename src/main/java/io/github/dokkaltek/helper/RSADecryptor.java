@@ -0,0 +1,212 @@
+package io.github.dokkaltek.helper;
+
+import io.github.dokkaltek.exception.CryptoException;
+import io.github.dokkaltek.exception.InvalidInputException;
+
+import javax.crypto.Cipher;
+import java.io.Closeable;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Service that decrypts RSA messages with a private key on its own bounded pool of workers, so bursts of encrypted
+ * payloads don't block the threads that receive them. Each worker keeps its own cipher, initialized once with the key,
+ * and submissions wait in a bounded queue:
+ * <ul>
+ *     <li>{@link #submit(byte[])} fails fast when the queue is full.</li>
+ *     <li>{@link #submit(byte[], long, TimeUnit)} waits for room in the queue up to the given time.</li>
+ * </ul>
+ * The private key must be in CRT form, since the other form is about 4 times slower to decrypt with. Keys read with
+ * {@link io.github.dokkaltek.util.RSAUtils} are always in CRT form. The workers are created with the given
+ * {@link ThreadFactory}, which can create virtual threads on JDKs that support them.
+ */
+public class RSADecryptor implements Closeable {
+    private static final String DEFAULT_ALGORITHM = "RSA/ECB/OAEPWithSHA-256AndMGF1Padding";
+    private final PrivateKey privateKey;
+    private final String algorithm;
+    private final ThreadPoolExecutor executor;
+    private final Semaphore permits;
+    private final ThreadLocal<Cipher> ciphers;
+
+    /**
+     * Creates a decryptor with the default algorithm, <code>RSA/ECB/OAEPWithSHA-256AndMGF1Padding</code>.
+     * @param privateKey The private key to decrypt with, in CRT form.
+     * @param workers The number of workers.
+     * @param queueCapacity The number of messages that can wait for a worker.
+     */
+    public RSADecryptor(PrivateKey privateKey, int workers, int queueCapacity) {
+        this(privateKey, DEFAULT_ALGORITHM, workers, queueCapacity, defaultThreadFactory());
+    }
+
+    /**
+     * Creates a decryptor.
+     * @param privateKey The private key to decrypt with, in CRT form.
+     * @param algorithm The algorithm to decrypt with.
+     * @param workers The number of workers.
+     * @param queueCapacity The number of messages that can wait for a worker.
+     * @param threadFactory The factory of the worker threads.
+     */
+    public RSADecryptor(PrivateKey privateKey, String algorithm, int workers, int queueCapacity,
+                        ThreadFactory threadFactory) {
+        if (algorithm == null || threadFactory == null || workers <= 0 || queueCapacity < 0)
+            throw new InvalidInputException("The algorithm and thread factory must not be null, the workers must be " +
+                    "positive and the queue capacity must not be negative.");
+        requireCrtKey(privateKey);
+        this.privateKey = privateKey;
+        this.algorithm = algorithm;
+        this.permits = new Semaphore(workers + queueCapacity);
+        // The permits bound the pending messages, and a finished task releases its permit before its worker takes
+        // the next one, so the queue must have room for all of them
+        this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(workers + queueCapacity), threadFactory);
+        this.ciphers = ThreadLocal.withInitial(this::createCipher);
+        // Fail on creation if the algorithm or key can't be used
+        createCipher();
+    }
+
+    /**
+     * Checks that a private key is an RSA key in CRT form, with all its CRT parameters.
+     * @param privateKey The private key to check.
+     * @throws InvalidInputException If the key is not in CRT form.
+     */
+    public static void requireCrtKey(PrivateKey privateKey) {
+        if (!(privateKey instanceof RSAPrivateCrtKey))
+            throw new InvalidInputException("The private key must be an RSA key in CRT form.");
+        RSAPrivateCrtKey crtKey = (RSAPrivateCrtKey) privateKey;
+        if (isMissing(crtKey.getPrimeP()) || isMissing(crtKey.getPrimeQ()) || isMissing(crtKey.getPrimeExponentP()) ||
+                isMissing(crtKey.getPrimeExponentQ()) || isMissing(crtKey.getCrtCoefficient()))
+            throw new InvalidInputException("The private key is missing some of its CRT parameters.");
+    }
+
+    /**
+     * Submits a message to be decrypted, failing if the queue is full.
+     * @param cipherText The message to decrypt.
+     * @return The future with the decrypted message, which fails with a {@link RejectedExecutionException} if the
+     * queue is full, or with a {@link CryptoException} if the message can't be decrypted.
+     */
+    public CompletableFuture<byte[]> submit(byte[] cipherText) {
+        if (!permits.tryAcquire())
+            return rejected();
+        return execute(cipherText);
+    }
+
+    /**
+     * Submits a message to be decrypted, waiting for room in the queue up to the given time.
+     * @param cipherText The message to decrypt.
+     * @param timeout The maximum time to wait for room in the queue.
+     * @param unit The unit of the timeout.
+     * @return The future with the decrypted message, which fails with a {@link RejectedExecutionException} if there
+     * was no room in time, or with a {@link CryptoException} if the message can't be decrypted.
+     */
+    public CompletableFuture<byte[]> submit(byte[] cipherText, long timeout, TimeUnit unit) {
+        try {
+            if (!permits.tryAcquire(timeout, unit))
+                return rejected();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return rejected();
+        }
+        return execute(cipherText);
+    }
+
+    /**
+     * Gets the number of messages submitted that haven't been decrypted yet.
+     * @return The number of pending messages.
+     */
+    public int getPendingCount() {
+        return executor.getQueue().size() + executor.getActiveCount();
+    }
+
+    /**
+     * Stops accepting messages, letting the pending ones finish.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * Runs the decryption of a message on the workers, releasing its permit when done.
+     * @param cipherText The message to decrypt.
+     * @return The future with the decrypted message.
+     */
+    private CompletableFuture<byte[]> execute(byte[] cipherText) {
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(ciphers.get().doFinal(cipherText));
+                } catch (GeneralSecurityException e) {
+                    result.completeExceptionally(new CryptoException("RSA Exception", e));
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Creates a cipher initialized with the private key.
+     * @return The initialized cipher.
+     */
+    private Cipher createCipher() {
+        try {
+            Cipher cipher = Cipher.getInstance(algorithm);
+            cipher.init(Cipher.DECRYPT_MODE, privateKey);
+            return cipher;
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException("RSA Exception", e);
+        }
+    }
+
+    /**
+     * Creates a future failed because the queue was full.
+     * @return The failed future.
+     */
+    private static CompletableFuture<byte[]> rejected() {
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+        result.completeExceptionally(new RejectedExecutionException("The RSA decryption queue is full."));
+        return result;
+    }
+
+    /**
+     * Checks if a CRT parameter is missing.
+     * @param value The parameter.
+     * @return True if the parameter is missing, false otherwise.
+     */
+    private static boolean isMissing(BigInteger value) {
+        return value == null || value.signum() == 0;
+    }
+
+    /**
+     * Creates the default factory of daemon worker threads.
+     * @return The thread factory.
+     */
+    private static ThreadFactory defaultThreadFactory() {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory delegate = Executors.defaultThreadFactory();
+        return runnable -> {
+            Thread thread = delegate.newThread(runnable);
+            thread.setName("rsa-decryptor-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,140 @@
+package io.github.dokkaltek.helper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/**
+ * Output stream that decodes the UTF-8 text written to it and sanitizes it like {@link SanitizingWriter}, writing the
+ * result as UTF-8 to the underlying stream. Chars split across writes are decoded once all their bytes are written,
+ * and malformed bytes are replaced. It must be closed to write the last value and any incomplete char.
+ */
+public class SanitizingOutputStream extends OutputStream {
+    private static final int BUFFER_SIZE = 8192;
+    private final SanitizingWriter writer;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+    private boolean closed;
+
+    /**
+     * Creates a stream that masks the given fields, whose values can't end with a comma.
+     * @param out The stream to write the sanitized text to.
+     * @param fieldsToMask The names of the fields to mask.
+     */
+    public SanitizingOutputStream(OutputStream out, Collection<String> fieldsToMask) {
+        this(out, fieldsToMask, ',');
+    }
+
+    /**
+     * Creates a stream that masks the given fields.
+     * @param out The stream to write the sanitized text to.
+     * @param fieldsToMask The names of the fields to mask.
+     * @param separator The separator that can't end the value of a field.
+     */
+    public SanitizingOutputStream(OutputStream out, Collection<String> fieldsToMask, char separator) {
+        if (out == null)
+            throw new NullPointerException("The output stream must not be null.");
+        this.writer = new SanitizingWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), fieldsToMask,
+                separator);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        bytes.put((byte) b);
+        if (!bytes.hasRemaining())
+            decode(false);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (off < 0 || len < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException();
+        while (len > 0) {
+            int toCopy = Math.min(len, bytes.remaining());
+            bytes.put(b, off, toCopy);
+            off += toCopy;
+            len -= toCopy;
+            if (!bytes.hasRemaining())
+                decode(false);
+        }
+    }
+
+    /**
+     * Flushes everything written so far, except incomplete chars and the value of a field that hasn't ended yet.
+     * @throws IOException If the underlying stream can't be written.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        decode(false);
+        writer.flush();
+    }
+
+    /**
+     * Writes the rest of the text, including the value of the last field, and closes the underlying stream.
+     * @throws IOException If the underlying stream can't be written.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            decode(true);
+            decoder.flush(chars);
+            writeChars();
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Decodes the buffered bytes and writes their chars to the sanitizing writer, keeping the bytes of an incomplete
+     * char for the next time.
+     * @param endOfInput True if no more bytes will be written.
+     * @throws IOException If the underlying stream can't be written.
+     */
+    private void decode(boolean endOfInput) throws IOException {
+        // The buffers are flipped and cleared as Buffer, since the overrides of ByteBuffer and CharBuffer don't exist
+        // on Java 8
+        ((Buffer) bytes).flip();
+        CoderResult result;
+        do {
+            result = decoder.decode(bytes, chars, endOfInput);
+            writeChars();
+        } while (result.isOverflow());
+        bytes.compact();
+    }
+
+    /**
+     * Writes the decoded chars to the sanitizing writer.
+     * @throws IOException If the underlying stream can't be written.
+     */
+    private void writeChars() throws IOException {
+        ((Buffer) chars).flip();
+        writer.write(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+        ((Buffer) chars).clear();
+    }
+
+    /**
+     * Checks that the stream hasn't been closed yet.
+     * @throws IOException If the stream was closed.
+     */
+    private void ensureOpen() throws IOException {
+        if (closed)
+            throw new IOException("The stream is closed");
+    }
+}
@@ -0,0 +1,279 @@
+package io.github.dokkaltek.helper;
+
+import io.github.dokkaltek.exception.InvalidInputException;
+import io.github.dokkaltek.util.LoggingUtils;
+import org.owasp.encoder.EncodedWriter;
+import org.owasp.encoder.Encoders;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.BitSet;
+import java.util.Collection;
+
+/**
+ * Writer that masks sensitive fields and escapes the text for logs in a single streaming pass, doing the same as
+ * {@link LoggingUtils#maskField(String, String...)} followed by {@link LoggingUtils#encodeForLog(Object)} without
+ * building any intermediate string, so it can sit below a log appender or dump large payloads. Fields and values can
+ * be split across any number of writes.
+ * <p>
+ * Unlike {@link LogMasker}, the fields are plain names instead of parts of a regex. A field is followed by optional
+ * whitespace, <code>=</code> or <code>:</code>, and optional whitespace, and its value ends at the first whitespace,
+ * without the separators it ends with, like <code>password=*****,</code>. The value of a field is only known when it
+ * ends, so it's held until then, and the last one is written when the writer is closed.
+ */
+public class SanitizingWriter extends Writer {
+    private static final String MASKED_FIELD = "*****";
+    private static final int BUFFER_SIZE = 1024;
+    private final Writer out;
+    private final char[][] fields;
+    private final BitSet lastFieldChars = new BitSet();
+    private final char separator;
+    private final char[] tail;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int buffered;
+    private int tailPosition;
+    private int tailLength;
+    private State state = State.SCAN;
+    private int pendingSeparators;
+    private boolean closed;
+
+    /**
+     * States of the masking of a field.
+     */
+    private enum State {
+        /** Looking for a field. */
+        SCAN,
+        /** After a field, waiting for its separator. */
+        AFTER_FIELD,
+        /** After the separator of a field, waiting for its value. */
+        AFTER_SEP,
+        /** Inside the value of a field. */
+        VALUE
+    }
+
+    /**
+     * Creates a writer that masks the given fields, whose values can't end with a comma.
+     * @param out The writer to write the sanitized text to.
+     * @param fieldsToMask The names of the fields to mask.
+     */
+    public SanitizingWriter(Writer out, Collection<String> fieldsToMask) {
+        this(out, fieldsToMask, ',');
+    }
+
+    /**
+     * Creates a writer that masks the given fields.
+     * @param out The writer to write the sanitized text to.
+     * @param fieldsToMask The names of the fields to mask.
+     * @param separator The separator that can't end the value of a field.
+     */
+    public SanitizingWriter(Writer out, Collection<String> fieldsToMask, char separator) {
+        if (out == null || fieldsToMask == null)
+            throw new NullPointerException("The writer and fields to mask must not be null.");
+        this.out = new EncodedWriter(out, Encoders.JAVA);
+        this.fields = fieldsToMask.stream()
+                .filter(field -> field != null && !field.isEmpty())
+                .map(String::toCharArray)
+                .toArray(char[][]::new);
+        int maxLength = 0;
+        for (char[] field : fields) {
+            if (isWhitespace(field[field.length - 1]))
+                throw new InvalidInputException("The fields to mask can't end with whitespace.");
+            lastFieldChars.set(field[field.length - 1]);
+            maxLength = Math.max(maxLength, field.length);
+        }
+        this.separator = separator;
+        this.tail = new char[Math.max(1, maxLength)];
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        ensureOpen();
+        process((char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        ensureOpen();
+        if (off < 0 || len < 0 || len > cbuf.length - off)
+            throw new IndexOutOfBoundsException();
+        for (int i = off; i < off + len; i++)
+            process(cbuf[i]);
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        ensureOpen();
+        if (off < 0 || len < 0 || len > str.length() - off)
+            throw new IndexOutOfBoundsException();
+        for (int i = off; i < off + len; i++)
+            process(str.charAt(i));
+    }
+
+    /**
+     * Flushes everything written so far, except the value of a field that hasn't ended yet.
+     * @throws IOException If the underlying writer can't be written.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        flushBuffer();
+        out.flush();
+    }
+
+    /**
+     * Writes the value of the last field, if any, and closes the underlying writer.
+     * @throws IOException If the underlying writer can't be written.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            // A separator at the end still has an empty value to mask
+            if (state == State.AFTER_SEP || state == State.VALUE)
+                endValue();
+            flushBuffer();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Moves the state machine forward with the next char of the text.
+     * @param c The next char.
+     * @throws IOException If the underlying writer can't be written.
+     */
+    private void process(char c) throws IOException {
+        switch (state) {
+            case AFTER_FIELD:
+                if (isWhitespace(c)) {
+                    emitAndTrack(c);
+                    return;
+                }
+                if (c == '=' || c == ':') {
+                    emitAndTrack(c);
+                    state = State.AFTER_SEP;
+                    return;
+                }
+                break;
+            case AFTER_SEP:
+                if (isWhitespace(c)) {
+                    emitAndTrack(c);
+                    return;
+                }
+                state = State.VALUE;
+                processValue(c);
+                return;
+            case VALUE:
+                processValue(c);
+                return;
+            default:
+                break;
+        }
+
+        state = State.SCAN;
+        emitAndTrack(c);
+        if (lastFieldChars.get(c) && endsWithField())
+            state = State.AFTER_FIELD;
+    }
+
+    /**
+     * Processes a char of the value of a field, which is dropped unless it ends the value.
+     * @param c The char.
+     * @throws IOException If the underlying writer can't be written.
+     */
+    private void processValue(char c) throws IOException {
+        if (isWhitespace(c)) {
+            endValue();
+            process(c);
+        } else if (c == separator) {
+            pendingSeparators++;
+        } else {
+            pendingSeparators = 0;
+        }
+    }
+
+    /**
+     * Writes the mask of the value that just ended and the separators it ended with.
+     * @throws IOException If the underlying writer can't be written.
+     */
+    private void endValue() throws IOException {
+        for (int i = 0; i < MASKED_FIELD.length(); i++)
+            emit(MASKED_FIELD.charAt(i));
+        for (; pendingSeparators > 0; pendingSeparators--)
+            emit(separator);
+        tailLength = 0;
+        state = State.SCAN;
+    }
+
+    /**
+     * Checks if the last chars of the text are one of the fields.
+     * @return True if a field just ended, false otherwise.
+     */
+    private boolean endsWithField() {
+        for (char[] field : fields) {
+            if (field.length > tailLength)
+                continue;
+            int i = 0;
+            while (i < field.length && field[field.length - 1 - i] ==
+                    tail[Math.floorMod(tailPosition - 1 - i, tail.length)])
+                i++;
+            if (i == field.length)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Writes a char and keeps it as one of the last chars, to detect fields.
+     * @param c The char.
+     * @throws IOException If the underlying writer can't be written.
+     */
+    private void emitAndTrack(char c) throws IOException {
+        tail[tailPosition] = c;
+        tailPosition = (tailPosition + 1) % tail.length;
+        tailLength = Math.min(tailLength + 1, tail.length);
+        emit(c);
+    }
+
+    /**
+     * Writes a char to the buffer of the encoder.
+     * @param c The char.
+     * @throws IOException If the underlying writer can't be written.
+     */
+    private void emit(char c) throws IOException {
+        if (buffered == buffer.length)
+            flushBuffer();
+        buffer[buffered++] = c;
+    }
+
+    /**
+     * Writes the buffered chars to the encoder.
+     * @throws IOException If the underlying writer can't be written.
+     */
+    private void flushBuffer() throws IOException {
+        if (buffered > 0) {
+            out.write(buffer, 0, buffered);
+            buffered = 0;
+        }
+    }
+
+    /**
+     * Checks that the writer hasn't been closed yet.
+     * @throws IOException If the writer was closed.
+     */
+    private void ensureOpen() throws IOException {
+        if (closed)
+            throw new IOException("The writer is closed");
+    }
+
+    /**
+     * Checks if a char is whitespace, like <code>\s</code> in a regex.
+     * @param c The char.
+     * @return True if it's whitespace, false otherwise.
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
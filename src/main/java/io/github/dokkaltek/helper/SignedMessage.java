@@ -0,0 +1,46 @@
+package io.github.dokkaltek.helper;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+/**
+ * Message along with its signature, to verify many of them at once with
+ * {@link io.github.dokkaltek.util.RSAUtils#verifyAll(java.util.List, java.security.PublicKey)}.
+ */
+@ToString
+@EqualsAndHashCode
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public final class SignedMessage {
+    private final byte[] message;
+    private final byte[] signature;
+
+    /**
+     * Creates a signed message.
+     * @param message The message that was signed.
+     * @param signature The signature of the message.
+     * @return The signed message.
+     */
+    public static SignedMessage of(byte[] message, byte[] signature) {
+        if (message == null || signature == null)
+            throw new NullPointerException("The message and signature of a signed message must not be null.");
+        return new SignedMessage(message, signature);
+    }
+
+    /**
+     * Getter for the message.
+     * @return The message.
+     */
+    public byte[] message() {
+        return message;
+    }
+
+    /**
+     * Getter for the signature.
+     * @return The signature.
+     */
+    public byte[] signature() {
+        return signature;
+    }
+}
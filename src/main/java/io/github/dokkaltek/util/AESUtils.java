@@ -1,39 +1,61 @@
 package io.github.dokkaltek.util;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import io.github.dokkaltek.constant.AESKeyBits;
 import io.github.dokkaltek.exception.CryptoException;
 import io.github.dokkaltek.exception.GenericException;
+import io.github.dokkaltek.exception.InvalidInputException;
+import io.github.dokkaltek.helper.AESDecryptingInputStream;
+import io.github.dokkaltek.helper.AESEncryptingOutputStream;
+import io.github.dokkaltek.helper.CryptoPool;
+import io.github.dokkaltek.helper.Duo;
+import io.github.dokkaltek.helper.GCMNonceGenerator;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 
-import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
-import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.KeyGenerator;
-import javax.crypto.NoSuchPaddingException;
+import javax.crypto.Mac;
 import javax.crypto.SealedObject;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
-import java.security.InvalidKeyException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.AlgorithmParameterSpec;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.KeySpec;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
 import static io.github.dokkaltek.constant.ErrorStatus.INTERNAL_SERVER_ERROR;
-import static io.github.dokkaltek.util.GeneratorUtils.getSecureRandomInstance;
+import static io.github.dokkaltek.util.GeneratorUtils.getNonceRandomInstance;
 import static io.github.dokkaltek.util.StringUtils.isBlankOrNull;
 
 /**
@@ -45,6 +67,28 @@ public class AESUtils {
     private static final String ERROR_CODE = "AES Exception";
     private static final String GCM_ALGORITHM_NAME = "AES/GCM/NoPadding";
     private static final String CBC_ALGORITHM_NAME = "AES/CBC/PKCS5PADDING";
+    private static final String ECB_ALGORITHM_NAME = "AES/ECB/NoPadding";
+    private static final String CTR_ALGORITHM_NAME = "AES/CTR/NoPadding";
+    private static final int AES_BLOCK_SIZE = 16;
+    private static final int DEFAULT_FILE_BUFFER_SIZE = 64 * 1024;
+    private static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final int DEFAULT_FRAME_SIZE = 64 * 1024;
+    private static final int DEFAULT_PBKDF2_ITERATIONS = 65536;
+    private static final int MAX_CACHED_DERIVED_KEYS = 256;
+    private static final ConcurrentHashMap<String, SecretKey> DERIVED_KEY_CACHE = new ConcurrentHashMap<>();
+    private static final String DERIVED_KEY_CACHE_MAC_NAME = "HmacSHA256";
+    private static final SecretKey DERIVED_KEY_CACHE_MAC_KEY = generateCacheMacKey();
+    private static final byte[] SEGMENTED_FILE_MAGIC = {'A', 'E', 'S', 'P'};
+    private static final byte SEGMENTED_FILE_VERSION = 1;
+    private static final int SEGMENTED_HEADER_SIZE = 32;
+    private static final int GCM_NONCE_SIZE = 12;
+    private static final int GCM_TAG_SIZE = 16;
+    private static final byte[] VALUE_MAGIC = {'A', 'E', 'S', 'V'};
+    private static final byte VALUE_VERSION = 1;
+    private static final int VALUE_HEADER_SIZE = 5;
+    private static final CryptoPool<Cipher> CIPHER_POOL = new CryptoPool<>(
+            (algorithm, provider) -> provider == null ? Cipher.getInstance(algorithm) :
+                    Cipher.getInstance(algorithm, provider), 16);
 
     /**
      * Generates a new AES key.
@@ -70,13 +114,28 @@ public class AESUtils {
      * @return The generated key.
      */
     public static SecretKey generateAESKeyFromPassword(AESKeyBits bits, String password, String salt) {
+        return generateAESKeyFromPassword(bits, password, salt, DEFAULT_PBKDF2_ITERATIONS);
+    }
+
+    /**
+     * Generates a new AES key from a password using the PBKDF2WithHmacSHA256 algorithm with the given iterations.
+     * @param bits The key size.
+     * @param password The password.
+     * @param salt The salt.
+     * @param iterations The number of iterations, which sets the cost of deriving the key.
+     * @return The generated key.
+     */
+    public static SecretKey generateAESKeyFromPassword(AESKeyBits bits, String password, String salt,
+                                                       int iterations) {
         if (isBlankOrNull(password))
             throw new CryptoException("The given password was null or empty.");
         if (isBlankOrNull(salt))
             throw new CryptoException("The given salt was null or empty.");
+        if (iterations <= 0)
+            throw new InvalidInputException("The number of iterations must be greater than 0.");
         try {
             SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
-            KeySpec spec = new PBEKeySpec(password.toCharArray(), salt.getBytes(), 65536, bits.bits());
+            KeySpec spec = new PBEKeySpec(password.toCharArray(), salt.getBytes(), iterations, bits.bits());
             return new SecretKeySpec(factory.generateSecret(spec)
                     .getEncoded(), ALGORITHM_NAME);
         } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
@@ -85,27 +144,103 @@ public class AESUtils {
     }
 
     /**
-     * Generates a 128-bit initialization vector.
+     * Gets the AES key derived from a password like
+     * {@link #generateAESKeyFromPassword(AESKeyBits, String, String, int)}, deriving it only the first time and
+     * returning it from a cache afterward. The cache is keyed by an HMAC-SHA256 of the inputs, with a random key
+     * generated for each process, so the passwords are never kept and can't be brute-forced from the cache. It holds
+     * up to 256 keys, being cleared when full.
+     * @param bits The key size.
+     * @param password The password.
+     * @param salt The salt.
+     * @param iterations The number of iterations.
+     * @return The derived key.
+     */
+    public static SecretKey getCachedAESKeyFromPassword(AESKeyBits bits, String password, String salt,
+                                                        int iterations) {
+        String cacheKey = derivedKeyCacheKey(bits, password, salt, iterations);
+        SecretKey key = DERIVED_KEY_CACHE.get(cacheKey);
+        if (key != null)
+            return key;
+
+        // The key is derived outside the map, since computing it inside would block other keys for a long time
+        key = generateAESKeyFromPassword(bits, password, salt, iterations);
+        if (DERIVED_KEY_CACHE.size() >= MAX_CACHED_DERIVED_KEYS)
+            DERIVED_KEY_CACHE.clear();
+        SecretKey cached = DERIVED_KEY_CACHE.putIfAbsent(cacheKey, key);
+        return cached == null ? key : cached;
+    }
+
+    /**
+     * Removes a key from the cache of {@link #getCachedAESKeyFromPassword(AESKeyBits, String, String, int)}, like
+     * when its password is rotated.
+     * @param bits The key size.
+     * @param password The password.
+     * @param salt The salt.
+     * @param iterations The number of iterations.
+     * @return True if the key was cached, false otherwise.
+     */
+    public static boolean invalidateCachedAESKey(AESKeyBits bits, String password, String salt, int iterations) {
+        return DERIVED_KEY_CACHE.remove(derivedKeyCacheKey(bits, password, salt, iterations)) != null;
+    }
+
+    /**
+     * Removes all the keys from the cache of {@link #getCachedAESKeyFromPassword(AESKeyBits, String, String, int)}.
+     */
+    public static void clearAESKeyCache() {
+        DERIVED_KEY_CACHE.clear();
+    }
+
+    /**
+     * Generates AES keys from many passwords in parallel, like when rotating keys in batch. Each key is derived with
+     * {@link #generateAESKeyFromPassword(AESKeyBits, String, String, int)} on the {@link ForkJoinPool#commonPool()}.
+     * @param bits The key size.
+     * @param passwordsAndSalts The passwords, as the first values, and their salts, as the second values.
+     * @param iterations The number of iterations.
+     * @return The generated keys, in the same order.
+     */
+    public static List<SecretKey> generateAESKeysFromPasswords(AESKeyBits bits,
+                                                               List<Duo<String, String>> passwordsAndSalts,
+                                                               int iterations) {
+        if (passwordsAndSalts == null)
+            return new ArrayList<>();
+        return passwordsAndSalts.parallelStream()
+                .map(entry -> generateAESKeyFromPassword(bits, entry.first(), entry.second(), iterations))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Generates a 128-bit initialization vector with the non-blocking random source of the current thread.
      *
      * @return The {@link IvParameterSpec} with the generated initialization vector.
      */
     public static IvParameterSpec generateIv() {
         byte[] iv = new byte[16];
-        getSecureRandomInstance().nextBytes(iv);
+        getNonceRandomInstance().nextBytes(iv);
         return new IvParameterSpec(iv);
     }
 
     /**
-     * Generates a 128-bit initialization vector, which is the recommended size for performance and security for GCM.
+     * Generates a 128-bit initialization vector, which is the recommended size for performance and security for GCM,
+     * with the non-blocking random source of the current thread.
      *
      * @return The {@link IvParameterSpec} with the generated initialization vector.
      */
     public static GCMParameterSpec generateIvForGCM() {
         byte[] iv = new byte[16];
-        getSecureRandomInstance().nextBytes(iv);
+        getNonceRandomInstance().nextBytes(iv);
         return new GCMParameterSpec(128, iv);
     }
 
+    /**
+     * Generates a 96-bit nonce for GCM from the process-wide {@link GCMNonceGenerator}, made of a random prefix and a
+     * counter, so it needs no randomness per message and is never repeated by this process.
+     *
+     * @return The {@link GCMParameterSpec} with the generated nonce.
+     */
+    public static GCMParameterSpec generateCounterIvForGCM() {
+        return new GCMParameterSpec(GCM_TAG_SIZE * 8, GCMNonceGenerator.getInstance().next());
+    }
+
     /**
      * Generates an initialization vector from the input string. To generate a 128-bit initialization vector,
      * use a string of 16 characters.
@@ -335,17 +470,51 @@ public class AESUtils {
         if (algorithm == null)
             return new byte[0];
         try {
-            Cipher cipher = Cipher.getInstance(algorithm);
-            cipher.init(Cipher.ENCRYPT_MODE, key, iv);
-            return cipher.doFinal(input);
-        } catch (NoSuchAlgorithmException | NoSuchPaddingException | IllegalBlockSizeException | BadPaddingException |
-                 InvalidAlgorithmParameterException | InvalidKeyException ex) {
+            return initCipher(algorithm, Cipher.ENCRYPT_MODE, key, iv).doFinal(input);
+        } catch (GeneralSecurityException ex) {
             throw new CryptoException(ERROR_CODE, ex);
         }
     }
 
     /**
-     * Encrypts the given file to the output file using AES.
+     * Encrypts the remaining content of the input buffer into the output buffer using AES, without copying them to
+     * arrays, so direct buffers from sockets or file channels can be encrypted in place. The input buffer is consumed
+     * and the position of the output buffer is moved past the written bytes.
+     * @param algorithm The algorithm to use.
+     * @param input The buffer with the content to encrypt.
+     * @param output The buffer to write the encrypted content to. It needs at least
+     *               {@link #getAESEncryptedSize(String, int)} bytes of room.
+     * @param key The key to use.
+     * @param iv The initialization vector to use.
+     * @return The number of bytes written to the output buffer.
+     */
+    public static int encryptBufferToAESWithAlgorithm(String algorithm, ByteBuffer input, ByteBuffer output,
+                                                      SecretKey key, AlgorithmParameterSpec iv) {
+        return cryptBuffer(Cipher.ENCRYPT_MODE, algorithm, input, output, key, iv);
+    }
+
+    /**
+     * Gets the size of the output of encrypting content of the given length with AES, to allocate the output buffer
+     * of {@link #encryptBufferToAESWithAlgorithm(String, ByteBuffer, ByteBuffer, SecretKey, AlgorithmParameterSpec)}
+     * in advance. For GCM it accounts for a tag of 16 bytes, which is the largest one.
+     * @param algorithm The algorithm to use, like <code>AES/GCM/NoPadding</code>.
+     * @param inputLength The length of the content to encrypt.
+     * @return The size of the encrypted content, in bytes.
+     */
+    public static int getAESEncryptedSize(String algorithm, int inputLength) {
+        if (algorithm == null || inputLength < 0)
+            throw new InvalidInputException("The algorithm must not be null and the length must not be negative.");
+        String upperAlgorithm = algorithm.toUpperCase();
+        if (upperAlgorithm.contains("/GCM/"))
+            return inputLength + GCM_TAG_SIZE;
+        if (upperAlgorithm.endsWith("/NOPADDING"))
+            return inputLength;
+        return (inputLength / 16 + 1) * 16;
+    }
+
+    /**
+     * Encrypts the given file to the output file using AES, reading and writing it through file channels with a
+     * buffer of 64 KiB.
      * @param algorithm The algorithm to use for encryption.
      * @param key The key to use.
      * @param iv The initialization vector to use.
@@ -354,36 +523,29 @@ public class AESUtils {
      */
     public static void encryptFileToAESWithAlgorithm(String algorithm, SecretKey key, AlgorithmParameterSpec iv,
                                                      File inputFile, File outputFile) {
+        encryptFileToAESWithAlgorithm(algorithm, key, iv, inputFile, outputFile, DEFAULT_FILE_BUFFER_SIZE);
+    }
+
+    /**
+     * Encrypts the given file to the output file using AES, reading and writing it through file channels with
+     * reusable direct buffers of the given size.
+     * @param algorithm The algorithm to use for encryption.
+     * @param key The key to use.
+     * @param iv The initialization vector to use.
+     * @param inputFile The input file to encrypt.
+     * @param outputFile The output file to write the encrypted file to.
+     * @param bufferSize The size of the buffer used to read the input file, in bytes.
+     */
+    public static void encryptFileToAESWithAlgorithm(String algorithm, SecretKey key, AlgorithmParameterSpec iv,
+                                                     File inputFile, File outputFile, int bufferSize) {
         if (inputFile == null || outputFile == null)
             throw new NullPointerException("Input file and output file to encrypt must not be null");
-
-        try (FileInputStream inputStream = new FileInputStream(inputFile);
-             FileOutputStream outputStream = new FileOutputStream(outputFile)) {
-            Cipher cipher = Cipher.getInstance(algorithm);
-            cipher.init(Cipher.ENCRYPT_MODE, key, iv);
-
-            byte[] buffer = new byte[64];
-            int bytesRead;
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                byte[] output = cipher.update(buffer, 0, bytesRead);
-                if (output != null) {
-                    outputStream.write(output);
-                }
-            }
-            byte[] outputBytes = cipher.doFinal();
-            if (outputBytes != null) {
-                outputStream.write(outputBytes);
-            }
-        } catch (IllegalBlockSizeException | NoSuchAlgorithmException | NoSuchPaddingException |
-                 InvalidAlgorithmParameterException | BadPaddingException | InvalidKeyException e) {
-            throw new CryptoException(ERROR_CODE, e);
-        } catch (IOException e) {
-            throw new GenericException("Error writing file", e, INTERNAL_SERVER_ERROR.code());
-        }
+        cryptFile(Cipher.ENCRYPT_MODE, algorithm, key, iv, inputFile, outputFile, bufferSize);
     }
 
     /**
-     * Encrypts an object using AES.
+     * Encrypts an object using AES. It relies on Java serialization, so {@link #encryptValue(Object, SecretKey)} should
+     * be preferred for new code.
      * @param algorithm The algorithm to use.
      * @param object The object to encrypt.
      * @param key The key to use.
@@ -395,11 +557,8 @@ public class AESUtils {
         if (object == null)
             return null;
         try {
-            Cipher cipher = Cipher.getInstance(algorithm);
-            cipher.init(Cipher.ENCRYPT_MODE, key, iv);
-            return new SealedObject(object, cipher);
-        } catch (NoSuchAlgorithmException | NoSuchPaddingException | IllegalBlockSizeException |
-                 InvalidAlgorithmParameterException | InvalidKeyException ex) {
+            return new SealedObject(object, initCipher(algorithm, Cipher.ENCRYPT_MODE, key, iv));
+        } catch (GeneralSecurityException ex) {
             throw new CryptoException(ERROR_CODE, ex);
         } catch (IOException e) {
             throw new GenericException("Error generating sealed object", e, INTERNAL_SERVER_ERROR.code());
@@ -435,17 +594,47 @@ public class AESUtils {
         if (cipherText == null || cipherText.length == 0)
             return new byte[0];
         try {
-            Cipher cipher = Cipher.getInstance(algorithm);
-            cipher.init(Cipher.DECRYPT_MODE, key, iv);
-            return cipher.doFinal(cipherText);
-        } catch (NoSuchAlgorithmException | NoSuchPaddingException | IllegalBlockSizeException | BadPaddingException |
-                 InvalidAlgorithmParameterException | InvalidKeyException ex) {
+            return initCipher(algorithm, Cipher.DECRYPT_MODE, key, iv).doFinal(cipherText);
+        } catch (GeneralSecurityException ex) {
             throw new CryptoException(ERROR_CODE, ex);
         }
     }
 
     /**
-     * Decrypts the given file to the output file using AES.
+     * Decrypts the remaining content of the input buffer into the output buffer using AES, without copying them to
+     * arrays. The input buffer is consumed and the position of the output buffer is moved past the written bytes.
+     * @param algorithm The algorithm to use.
+     * @param input The buffer with the content to decrypt.
+     * @param output The buffer to write the decrypted content to. It needs at least
+     *               {@link #getAESDecryptedSize(String, int)} bytes of room.
+     * @param key The key to use.
+     * @param iv The initialization vector to use.
+     * @return The number of bytes written to the output buffer.
+     */
+    public static int decryptAESBufferWithAlgorithm(String algorithm, ByteBuffer input, ByteBuffer output,
+                                                    SecretKey key, AlgorithmParameterSpec iv) {
+        return cryptBuffer(Cipher.DECRYPT_MODE, algorithm, input, output, key, iv);
+    }
+
+    /**
+     * Gets the maximum size of the output of decrypting content of the given length with AES, to allocate the output
+     * buffer of {@link #decryptAESBufferWithAlgorithm(String, ByteBuffer, ByteBuffer, SecretKey, AlgorithmParameterSpec)}
+     * in advance. With padding, the actual output will be up to a block shorter.
+     * @param algorithm The algorithm to use, like <code>AES/GCM/NoPadding</code>.
+     * @param inputLength The length of the content to decrypt.
+     * @return The maximum size of the decrypted content, in bytes.
+     */
+    public static int getAESDecryptedSize(String algorithm, int inputLength) {
+        if (algorithm == null || inputLength < 0)
+            throw new InvalidInputException("The algorithm must not be null and the length must not be negative.");
+        if (algorithm.toUpperCase().contains("/GCM/"))
+            return Math.max(0, inputLength - GCM_TAG_SIZE);
+        return inputLength;
+    }
+
+    /**
+     * Decrypts the given file to the output file using AES, reading and writing it through file channels with a
+     * buffer of 64 KiB.
      * @param algorithm The algorithm to use for decryption.
      * @param key The key to use.
      * @param iv The initialization vector to use.
@@ -454,32 +643,25 @@ public class AESUtils {
      */
     public static void decryptAESFileWithAlgorithm(String algorithm, SecretKey key, AlgorithmParameterSpec iv,
                                                    File inputFile, File outputFile) {
+        decryptAESFileWithAlgorithm(algorithm, key, iv, inputFile, outputFile, DEFAULT_FILE_BUFFER_SIZE);
+    }
+
+    /**
+     * Decrypts the given file to the output file using AES, reading and writing it through file channels with
+     * reusable direct buffers of the given size. Keep in mind that authenticated modes like GCM can't release any
+     * plain text until the whole file has been authenticated, so they will hold the whole output in memory anyway.
+     * @param algorithm The algorithm to use for decryption.
+     * @param key The key to use.
+     * @param iv The initialization vector to use.
+     * @param inputFile The input file to decrypt.
+     * @param outputFile The output file to write the decrypted file to.
+     * @param bufferSize The size of the buffer used to read the input file, in bytes.
+     */
+    public static void decryptAESFileWithAlgorithm(String algorithm, SecretKey key, AlgorithmParameterSpec iv,
+                                                   File inputFile, File outputFile, int bufferSize) {
         if (inputFile == null || outputFile == null)
             throw new NullPointerException("Input file and output file to decrypt must not be null");
-
-        try (FileInputStream inputStream = new FileInputStream(inputFile);
-             FileOutputStream outputStream = new FileOutputStream(outputFile)) {
-            Cipher cipher = Cipher.getInstance(algorithm);
-            cipher.init(Cipher.DECRYPT_MODE, key, iv);
-
-            byte[] buffer = new byte[64];
-            int bytesRead;
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                byte[] output = cipher.update(buffer, 0, bytesRead);
-                if (output != null) {
-                    outputStream.write(output);
-                }
-            }
-            byte[] outputBytes = cipher.doFinal();
-            if (outputBytes != null) {
-                outputStream.write(outputBytes);
-            }
-        } catch (IllegalBlockSizeException | NoSuchAlgorithmException | NoSuchPaddingException |
-                 InvalidAlgorithmParameterException | BadPaddingException | InvalidKeyException e) {
-            throw new CryptoException(ERROR_CODE, e);
-        } catch (IOException e) {
-            throw new GenericException("Error writing file", e, INTERNAL_SERVER_ERROR.code());
-        }
+        cryptFile(Cipher.DECRYPT_MODE, algorithm, key, iv, inputFile, outputFile, bufferSize);
     }
 
     /**
@@ -496,14 +678,952 @@ public class AESUtils {
             return null;
 
         try {
-            Cipher cipher = Cipher.getInstance(algorithm);
-            cipher.init(Cipher.DECRYPT_MODE, key, iv);
-            return (Serializable) sealedObject.getObject(cipher);
-        } catch (NoSuchAlgorithmException | NoSuchPaddingException | IllegalBlockSizeException | BadPaddingException |
-                 InvalidAlgorithmParameterException | InvalidKeyException | ClassNotFoundException ex) {
+            return (Serializable) sealedObject.getObject(initCipher(algorithm, Cipher.DECRYPT_MODE, key, iv));
+        } catch (GeneralSecurityException | ClassNotFoundException ex) {
             throw new CryptoException(ERROR_CODE, ex);
         } catch (IOException e) {
             throw new CryptoException("Error decrypting object", e);
         }
     }
+
+    /**
+     * Encrypts a value into a compact envelope, serializing it to json with {@link JsonUtils} and encrypting it with
+     * AES-GCM. Unlike {@link #encryptObjectToAESWithAlgorithm(String, Serializable, SecretKey, AlgorithmParameterSpec)},
+     * it doesn't use Java serialization, so the result is a lot smaller and faster to produce, and decrypting it can't
+     * instantiate arbitrary classes. The envelope is made of:
+     * <ul>
+     *     <li>Magic <code>AESV</code> and version, which are also authenticated.</li>
+     *     <li>A 12-byte nonce from {@link GCMNonceGenerator}.</li>
+     *     <li>The encrypted json, followed by its 16-byte tag.</li>
+     * </ul>
+     * @param value The value to encrypt, which can be null.
+     * @param key The key to use.
+     * @return The envelope with the encrypted value.
+     */
+    public static <T> byte[] encryptValue(T value, SecretKey key) {
+        if (key == null)
+            throw new NullPointerException("The key to encrypt with must not be null.");
+        byte[] json = JsonUtils.convertObjectToBytes(value);
+        byte[] envelope = new byte[VALUE_HEADER_SIZE + GCM_NONCE_SIZE + json.length + GCM_TAG_SIZE];
+        System.arraycopy(VALUE_MAGIC, 0, envelope, 0, VALUE_MAGIC.length);
+        envelope[VALUE_MAGIC.length] = VALUE_VERSION;
+        GCMNonceGenerator.getInstance().next(envelope, VALUE_HEADER_SIZE);
+        try {
+            Cipher cipher = initCipher(GCM_ALGORITHM_NAME, Cipher.ENCRYPT_MODE, key,
+                    new GCMParameterSpec(GCM_TAG_SIZE * 8, envelope, VALUE_HEADER_SIZE, GCM_NONCE_SIZE));
+            cipher.updateAAD(envelope, 0, VALUE_HEADER_SIZE);
+            cipher.doFinal(json, 0, json.length, envelope, VALUE_HEADER_SIZE + GCM_NONCE_SIZE);
+            return envelope;
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException(ERROR_CODE, e);
+        }
+    }
+
+    /**
+     * Decrypts a value encrypted with {@link #encryptValue(Object, SecretKey)}.
+     * @param envelope The envelope with the encrypted value.
+     * @param clazz The class of the value.
+     * @param key The key to use.
+     * @return The decrypted value, or null if the encrypted value was null.
+     * @throws CryptoException If the envelope was modified or the key doesn't match.
+     */
+    public static <T> T decryptValue(byte[] envelope, Class<T> clazz, SecretKey key) {
+        return JsonUtils.parseByteArray(openValueEnvelope(envelope, key), clazz);
+    }
+
+    /**
+     * Decrypts a value encrypted with {@link #encryptValue(Object, SecretKey)} into a parametrized type, like a list
+     * or a map.
+     * @param envelope The envelope with the encrypted value.
+     * @param typeRef The type of the value.
+     * @param key The key to use.
+     * @return The decrypted value, or null if the encrypted value was null.
+     * @throws CryptoException If the envelope was modified or the key doesn't match.
+     */
+    public static <T> T decryptValue(byte[] envelope, TypeReference<T> typeRef, SecretKey key) {
+        return JsonUtils.parseByteArrayToParametrizedType(openValueEnvelope(envelope, key), typeRef);
+    }
+
+    /**
+     * Wraps an output stream so that everything written to it is encrypted with AES-GCM in frames of 64 KiB, using
+     * constant memory for any amount of data. The encrypted data starts with a header with the algorithm, IV and tag
+     * length, so only the key is needed to decrypt it with {@link #decryptingStream(InputStream, SecretKey)}.
+     * The returned stream must be closed to write the last frame.
+     * @param output The stream to write the encrypted data to.
+     * @param key The key to use.
+     * @return The encrypting stream.
+     * @see AESEncryptingOutputStream
+     */
+    public static OutputStream encryptingStream(OutputStream output, SecretKey key) {
+        return encryptingStream(output, key, DEFAULT_FRAME_SIZE);
+    }
+
+    /**
+     * Wraps an output stream so that everything written to it is encrypted with AES-GCM in frames of the given size.
+     * The returned stream must be closed to write the last frame.
+     * @param output The stream to write the encrypted data to.
+     * @param key The key to use.
+     * @param frameSize The size of the plain text of each frame, in bytes, up to 16 MiB.
+     * @return The encrypting stream.
+     * @see AESEncryptingOutputStream
+     */
+    public static OutputStream encryptingStream(OutputStream output, SecretKey key, int frameSize) {
+        return new AESEncryptingOutputStream(output, key, frameSize);
+    }
+
+    /**
+     * Wraps an input stream with data encrypted by {@link #encryptingStream(OutputStream, SecretKey)} so that it's
+     * decrypted as it's read, one frame at a time. Every frame is authenticated before its plain text is returned.
+     * @param input The stream to read the encrypted data from.
+     * @param key The key to use.
+     * @return The decrypting stream.
+     * @see AESDecryptingInputStream
+     */
+    public static InputStream decryptingStream(InputStream input, SecretKey key) {
+        return new AESDecryptingInputStream(input, key);
+    }
+
+    /**
+     * Encrypts many small records with AES-GCM, reusing the same cipher and key schedule for all of them and taking
+     * their nonces from the process-wide {@link GCMNonceGenerator}, so no IV has to be supplied. Each encrypted record
+     * is made of its 12-byte nonce, its cipher text and its 16-byte tag, and can be decrypted with
+     * {@link #decryptAllGCM(SecretKey, List)}. It can be called from many threads at the same time.
+     * @param key The key to use.
+     * @param records The records to encrypt.
+     * @return The encrypted records, in the same order.
+     */
+    public static List<byte[]> encryptAllGCM(SecretKey key, List<byte[]> records) {
+        if (records == null || records.isEmpty())
+            return new ArrayList<>();
+        List<byte[]> encrypted = new ArrayList<>(records.size());
+        try {
+            Cipher cipher = CIPHER_POOL.get(GCM_ALGORITHM_NAME);
+            for (byte[] record : records) {
+                byte[] output = new byte[GCM_NONCE_SIZE + record.length + GCM_TAG_SIZE];
+                GCMNonceGenerator.getInstance().next(output, 0);
+                cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_SIZE * 8, output, 0,
+                        GCM_NONCE_SIZE));
+                cipher.doFinal(record, 0, record.length, output, GCM_NONCE_SIZE);
+                encrypted.add(output);
+            }
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException(ERROR_CODE, e);
+        }
+        return encrypted;
+    }
+
+    /**
+     * Encrypts many small records with AES-GCM like {@link #encryptAllGCM(SecretKey, List)}, but writing them one
+     * after the other into the given arena buffer, from its position, instead of allocating an array per record.
+     * The arena needs {@link #getGCMArenaSize(List)} bytes of room. Each thread can encrypt its own records into its own
+     * slice of a shared arena.
+     * @param key The key to use.
+     * @param records The records to encrypt.
+     * @param arena The buffer to write the encrypted records to. Its position is moved past the last record.
+     * @return The offsets of the encrypted records in the arena, with an extra last offset for the end of the last
+     * record, so record <code>i</code> goes from <code>offsets[i]</code> to <code>offsets[i + 1]</code>.
+     */
+    public static int[] encryptAllGCM(SecretKey key, List<byte[]> records, ByteBuffer arena) {
+        if (records == null || arena == null)
+            throw new InvalidInputException("The records and arena to encrypt into must not be null.");
+        if (arena.remaining() < getGCMArenaSize(records))
+            throw new InvalidInputException("The arena doesn't have enough room for the encrypted records.");
+
+        int[] offsets = new int[records.size() + 1];
+        byte[] nonce = new byte[GCM_NONCE_SIZE];
+        try {
+            Cipher cipher = CIPHER_POOL.get(GCM_ALGORITHM_NAME);
+            for (int i = 0; i < records.size(); i++) {
+                offsets[i] = arena.position();
+                GCMNonceGenerator.getInstance().next(nonce, 0);
+                cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_SIZE * 8, nonce));
+                arena.put(nonce);
+                cipher.doFinal(ByteBuffer.wrap(records.get(i)), arena);
+            }
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException(ERROR_CODE, e);
+        }
+        offsets[records.size()] = arena.position();
+        return offsets;
+    }
+
+    /**
+     * Gets the room needed in an arena buffer to encrypt the given records with
+     * {@link #encryptAllGCM(SecretKey, List, ByteBuffer)}.
+     * @param records The records to encrypt.
+     * @return The size needed, in bytes.
+     */
+    public static long getGCMArenaSize(List<byte[]> records) {
+        long size = 0;
+        for (byte[] record : records)
+            size += GCM_NONCE_SIZE + record.length + GCM_TAG_SIZE;
+        return size;
+    }
+
+    /**
+     * Decrypts many small records encrypted with {@link #encryptAllGCM(SecretKey, List)}, reusing the same cipher for
+     * all of them.
+     * @param key The key to use.
+     * @param records The encrypted records, each one made of its nonce, cipher text and tag.
+     * @return The decrypted records, in the same order.
+     */
+    public static List<byte[]> decryptAllGCM(SecretKey key, List<byte[]> records) {
+        if (records == null || records.isEmpty())
+            return new ArrayList<>();
+        List<byte[]> decrypted = new ArrayList<>(records.size());
+        try {
+            Cipher cipher = CIPHER_POOL.get(GCM_ALGORITHM_NAME);
+            for (byte[] record : records) {
+                if (record.length < GCM_NONCE_SIZE + GCM_TAG_SIZE)
+                    throw new CryptoException("The encrypted record is too short.");
+                cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_SIZE * 8, record, 0,
+                        GCM_NONCE_SIZE));
+                decrypted.add(cipher.doFinal(record, GCM_NONCE_SIZE, record.length - GCM_NONCE_SIZE));
+            }
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException(ERROR_CODE, e);
+        }
+        return decrypted;
+    }
+
+    /**
+     * Gets the pool of ciphers used by the AES operations, to check its hit rate or clear it.
+     * @return The cipher pool.
+     */
+    public static CryptoPool<Cipher> getCipherPool() {
+        return CIPHER_POOL;
+    }
+
+    /**
+     * Encrypts a file with AES-GCM into a segmented format, encrypting chunks of 4 MiB in parallel on the
+     * {@link ForkJoinPool#commonPool()}. Each chunk is authenticated on its own, so the file can be decrypted in
+     * parallel, or read at random positions, with {@link #decryptFileParallel(File, File, SecretKey)} and
+     * {@link #decryptFileRange(File, SecretKey, long, int)}.
+     * @param inputFile The input file to encrypt.
+     * @param outputFile The output file to write the encrypted file to.
+     * @param key The key to use.
+     */
+    public static void encryptFileParallel(File inputFile, File outputFile, SecretKey key) {
+        encryptFileParallel(inputFile, outputFile, key, DEFAULT_CHUNK_SIZE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Encrypts a file with AES-GCM into a segmented format, encrypting its chunks in parallel on the given executor.
+     * The input file is read through memory mapped buffers and every chunk is encrypted under its own nonce, derived
+     * from a random base nonce and the index of the chunk, and written at its position in the output file.
+     * The format is made of a header of 32 bytes followed by the chunks, each one with its authentication tag:
+     * <ul>
+     *     <li>Header: magic <code>AESP</code>, version, nonce size, tag size, reserved byte, chunk size (int),
+     *     plain text size (long), and base nonce.</li>
+     *     <li>Chunks: cipher text and 16-byte tag, authenticated together with the header.</li>
+     * </ul>
+     * @param inputFile The input file to encrypt.
+     * @param outputFile The output file to write the encrypted file to.
+     * @param key The key to use.
+     * @param chunkSize The size of the plain text chunks, in bytes.
+     * @param executor The executor to encrypt the chunks on.
+     */
+    public static void encryptFileParallel(File inputFile, File outputFile, SecretKey key, int chunkSize,
+                                           Executor executor) {
+        if (inputFile == null || outputFile == null)
+            throw new NullPointerException("Input file and output file to encrypt must not be null");
+        if (chunkSize <= 0 || chunkSize > Integer.MAX_VALUE - GCM_TAG_SIZE || executor == null)
+            throw new InvalidInputException("The chunk size must be a positive int and the executor not null.");
+
+        try (FileChannel input = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ);
+             FileChannel output = FileChannel.open(outputFile.toPath(), StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            byte[] baseNonce = new byte[GCM_NONCE_SIZE];
+            getNonceRandomInstance().nextBytes(baseNonce);
+            // The size is read only once, so the chunks always match the header even if the file changes
+            long plainSize = input.size();
+            byte[] header = createSegmentedHeader(chunkSize, plainSize, baseNonce);
+            writeFully(output, ByteBuffer.allocate(header.length).put(header), 0);
+
+            runOnChunks(countChunks(plainSize, chunkSize), executor, chunk -> {
+                long position = chunk * chunkSize;
+                int length = (int) Math.min(chunkSize, plainSize - position);
+                Cipher cipher = initChunkCipher(Cipher.ENCRYPT_MODE, key, baseNonce, chunk, header);
+                MappedByteBuffer plainText = input.map(FileChannel.MapMode.READ_ONLY, position, length);
+                ByteBuffer cipherText = ByteBuffer.allocate(length + GCM_TAG_SIZE);
+                cipher.doFinal(plainText, cipherText);
+                writeFully(output, cipherText, SEGMENTED_HEADER_SIZE + chunk * (chunkSize + GCM_TAG_SIZE));
+            });
+        } catch (IOException e) {
+            throw new GenericException("Error writing file", e, INTERNAL_SERVER_ERROR.code());
+        }
+    }
+
+    /**
+     * Decrypts a file encrypted with {@link #encryptFileParallel(File, File, SecretKey, int, Executor)},
+     * decrypting its chunks in parallel on the {@link ForkJoinPool#commonPool()}.
+     * @param inputFile The input file to decrypt.
+     * @param outputFile The output file to write the decrypted file to.
+     * @param key The key to use.
+     */
+    public static void decryptFileParallel(File inputFile, File outputFile, SecretKey key) {
+        decryptFileParallel(inputFile, outputFile, key, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Decrypts a file encrypted with {@link #encryptFileParallel(File, File, SecretKey, int, Executor)},
+     * decrypting its chunks in parallel on the given executor. Every chunk is authenticated before being written, and
+     * truncated, reordered or modified chunks make the decryption fail, deleting the output file so no partial plain
+     * text is left behind.
+     * @param inputFile The input file to decrypt.
+     * @param outputFile The output file to write the decrypted file to.
+     * @param key The key to use.
+     * @param executor The executor to decrypt the chunks on.
+     */
+    public static void decryptFileParallel(File inputFile, File outputFile, SecretKey key, Executor executor) {
+        if (inputFile == null || outputFile == null)
+            throw new NullPointerException("Input file and output file to decrypt must not be null");
+        if (executor == null)
+            throw new InvalidInputException("The executor must not be null.");
+
+        boolean outputOpened = false;
+        boolean decrypted = false;
+        try (FileChannel input = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ);
+             FileChannel output = FileChannel.open(outputFile.toPath(), StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            outputOpened = true;
+            byte[] header = readSegmentedHeader(input);
+            int chunkSize = ByteBuffer.wrap(header).getInt(8);
+            long plainSize = ByteBuffer.wrap(header).getLong(12);
+            byte[] baseNonce = Arrays.copyOfRange(header, 20, SEGMENTED_HEADER_SIZE);
+
+            runOnChunks(countChunks(plainSize, chunkSize), executor, chunk -> {
+                ByteBuffer plainText = decryptChunk(input, key, header, chunkSize, plainSize, baseNonce, chunk);
+                writeFully(output, plainText, chunk * chunkSize);
+            });
+            decrypted = true;
+        } catch (IOException e) {
+            throw new GenericException("Error writing file", e, INTERNAL_SERVER_ERROR.code());
+        } finally {
+            // The chunks verified before the failure were already written, so they must not be kept, but an output
+            // that was never opened wasn't touched by this call
+            if (outputOpened && !decrypted)
+                deleteIfExists(outputFile);
+        }
+    }
+
+    /**
+     * Reads a range of the plain text of a file encrypted with
+     * {@link #encryptFileParallel(File, File, SecretKey, int, Executor)}, decrypting and authenticating only the
+     * chunks that contain it.
+     * @param inputFile The encrypted file.
+     * @param key The key to use.
+     * @param position The position of the range in the plain text.
+     * @param length The length of the range. It will be shorter if the range goes past the end of the plain text.
+     * @return The decrypted range.
+     */
+    public static byte[] decryptFileRange(File inputFile, SecretKey key, long position, int length) {
+        if (inputFile == null)
+            throw new NullPointerException("Input file to decrypt must not be null");
+        if (position < 0 || length < 0)
+            throw new InvalidInputException("The position and length of the range must not be negative.");
+
+        try (FileChannel input = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
+            byte[] header = readSegmentedHeader(input);
+            int chunkSize = ByteBuffer.wrap(header).getInt(8);
+            long plainSize = ByteBuffer.wrap(header).getLong(12);
+            byte[] baseNonce = Arrays.copyOfRange(header, 20, SEGMENTED_HEADER_SIZE);
+
+            int actualLength = (int) Math.max(0, Math.min(length, plainSize - position));
+            byte[] result = new byte[actualLength];
+            int copied = 0;
+            while (copied < actualLength) {
+                long current = position + copied;
+                long chunk = current / chunkSize;
+                ByteBuffer plainText = decryptChunk(input, key, header, chunkSize, plainSize, baseNonce, chunk);
+                ((Buffer) plainText).flip().position((int) (current - chunk * chunkSize));
+                int toCopy = Math.min(plainText.remaining(), actualLength - copied);
+                plainText.get(result, copied, toCopy);
+                copied += toCopy;
+            }
+            return result;
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException(ERROR_CODE, e);
+        } catch (IOException e) {
+            throw new GenericException("Error reading file", e, INTERNAL_SERVER_ERROR.code());
+        }
+    }
+
+    /**
+     * Generates a new key for {@link #encryptDeterministic(byte[], SecretKey, byte[]...)}, made of two AES keys of the
+     * given size, one to authenticate and another to encrypt.
+     * @param bits The size of each of the two AES keys.
+     * @return The generated key, of twice the given size.
+     */
+    public static SecretKey generateSIVKey(AESKeyBits bits) {
+        if (bits == null)
+            throw new NullPointerException("The given key size was null.");
+        byte[] macKey = generateAESKey(bits).getEncoded();
+        byte[] encryptionKey = generateAESKey(bits).getEncoded();
+        byte[] key = Arrays.copyOf(macKey, macKey.length + encryptionKey.length);
+        System.arraycopy(encryptionKey, 0, key, macKey.length, encryptionKey.length);
+        return new SecretKeySpec(key, ALGORITHM_NAME);
+    }
+
+    /**
+     * Encrypts a text deterministically, like {@link #encryptDeterministic(byte[], SecretKey, byte[]...)}, so the
+     * same text always gives the same result and encrypted columns can be searched by equality.
+     * @param input The text to encrypt.
+     * @param key The SIV key to use, from {@link #generateSIVKey(AESKeyBits)}.
+     * @return The encrypted text, in base 64.
+     */
+    public static String encryptDeterministic(String input, SecretKey key) {
+        if (input == null)
+            return null;
+        return Base64.getEncoder().encodeToString(encryptDeterministic(input.getBytes(StandardCharsets.UTF_8), key));
+    }
+
+    /**
+     * Encrypts the given input with AES-SIV (RFC 5297), a deterministic authenticated encryption mode: the same input,
+     * associated data and key always give the same result, so encrypted values can be indexed and looked up by
+     * equality. The only thing it reveals is whether two values are equal. The result is the 16-byte synthetic IV,
+     * which authenticates the input and the associated data, followed by the cipher text, of the same size as the
+     * input.
+     * @param input The input to encrypt.
+     * @param key The SIV key to use, from {@link #generateSIVKey(AESKeyBits)}.
+     * @param associatedData The data that is authenticated but not encrypted, up to 126 parts, like the name of the
+     *                       column, so values can't be moved to another column.
+     * @return The encrypted input.
+     */
+    public static byte[] encryptDeterministic(byte[] input, SecretKey key, byte[]... associatedData) {
+        if (input == null)
+            throw new NullPointerException("The input to encrypt must not be null.");
+        SecretKey[] keys = splitSIVKey(key);
+        try {
+            byte[] syntheticIv = s2v(keys[0], associatedData, input);
+            byte[] output = Arrays.copyOf(syntheticIv, AES_BLOCK_SIZE + input.length);
+            initCipher(CTR_ALGORITHM_NAME, Cipher.ENCRYPT_MODE, keys[1], sivCounter(syntheticIv))
+                    .doFinal(input, 0, input.length, output, AES_BLOCK_SIZE);
+            return output;
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException(ERROR_CODE, e);
+        }
+    }
+
+    /**
+     * Decrypts a text encrypted with {@link #encryptDeterministic(String, SecretKey)}.
+     * @param cipherText The encrypted text, in base 64.
+     * @param key The SIV key to use.
+     * @return The decrypted text.
+     */
+    public static String decryptDeterministic(String cipherText, SecretKey key) {
+        if (isBlankOrNull(cipherText))
+            return null;
+        return new String(decryptDeterministic(Base64.getDecoder().decode(cipherText), key), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decrypts and authenticates an input encrypted with {@link #encryptDeterministic(byte[], SecretKey, byte[]...)}.
+     * @param cipherText The encrypted input.
+     * @param key The SIV key to use.
+     * @param associatedData The same associated data used to encrypt.
+     * @return The decrypted input.
+     * @throws CryptoException If the input was modified, or the key or associated data don't match.
+     */
+    public static byte[] decryptDeterministic(byte[] cipherText, SecretKey key, byte[]... associatedData) {
+        if (cipherText == null)
+            throw new NullPointerException("The input to decrypt must not be null.");
+        if (cipherText.length < AES_BLOCK_SIZE)
+            throw new CryptoException("The encrypted input is too short.");
+        SecretKey[] keys = splitSIVKey(key);
+        try {
+            byte[] syntheticIv = Arrays.copyOf(cipherText, AES_BLOCK_SIZE);
+            byte[] plainText = initCipher(CTR_ALGORITHM_NAME, Cipher.DECRYPT_MODE, keys[1], sivCounter(syntheticIv))
+                    .doFinal(cipherText, AES_BLOCK_SIZE, cipherText.length - AES_BLOCK_SIZE);
+            if (!MessageDigest.isEqual(syntheticIv, s2v(keys[0], associatedData, plainText))) {
+                Arrays.fill(plainText, (byte) 0);
+                throw new CryptoException("The encrypted input could not be authenticated.");
+            }
+            return plainText;
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException(ERROR_CODE, e);
+        }
+    }
+
+    /**
+     * Generates the random key of the HMAC of the derived key cache, which only lives as long as the process.
+     * @return The generated key.
+     */
+    private static SecretKey generateCacheMacKey() {
+        try {
+            return KeyGenerator.getInstance(DERIVED_KEY_CACHE_MAC_NAME).generateKey();
+        } catch (NoSuchAlgorithmException e) {
+            throw new CryptoException(ERROR_CODE, e);
+        }
+    }
+
+    /**
+     * Builds the key of a derived key in the cache with an HMAC of its inputs, so that the password is not kept.
+     * @param bits The key size.
+     * @param password The password.
+     * @param salt The salt.
+     * @param iterations The number of iterations.
+     * @return The cache key.
+     */
+    private static String derivedKeyCacheKey(AESKeyBits bits, String password, String salt, int iterations) {
+        if (bits == null || isBlankOrNull(password) || isBlankOrNull(salt))
+            throw new CryptoException("The given key size, password or salt was null or empty.");
+        try {
+            Mac mac = Mac.getInstance(DERIVED_KEY_CACHE_MAC_NAME);
+            mac.init(DERIVED_KEY_CACHE_MAC_KEY);
+            byte[] passwordBytes = password.getBytes(StandardCharsets.UTF_8);
+            mac.update(ByteBuffer.allocate(12).putInt(bits.bits()).putInt(iterations)
+                    .putInt(passwordBytes.length).array());
+            mac.update(passwordBytes);
+            mac.update(salt.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(mac.doFinal());
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException(ERROR_CODE, e);
+        }
+    }
+
+    /**
+     * Encrypts or decrypts the remaining content of a buffer into another one with the pooled cipher of the thread.
+     * @param mode The cipher mode.
+     * @param algorithm The algorithm to use.
+     * @param input The buffer to read.
+     * @param output The buffer to write.
+     * @param key The key to use.
+     * @param iv The initialization vector to use.
+     * @return The number of bytes written.
+     */
+    private static int cryptBuffer(int mode, String algorithm, ByteBuffer input, ByteBuffer output, SecretKey key,
+                                   AlgorithmParameterSpec iv) {
+        if (algorithm == null || input == null || output == null)
+            throw new InvalidInputException("The algorithm, input and output buffers must not be null.");
+        try {
+            Cipher cipher = initCipher(algorithm, mode, key, iv);
+            if (cipher.getOutputSize(input.remaining()) > output.remaining())
+                throw new InvalidInputException("The output buffer doesn't have enough room, it needs " +
+                        cipher.getOutputSize(input.remaining()) + " bytes.");
+            return cipher.doFinal(input, output);
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException(ERROR_CODE, e);
+        }
+    }
+
+    /**
+     * Authenticates and decrypts the json of an envelope made by {@link #encryptValue(Object, SecretKey)}.
+     * @param envelope The envelope.
+     * @param key The key to use.
+     * @return The decrypted json.
+     */
+    private static byte[] openValueEnvelope(byte[] envelope, SecretKey key) {
+        if (envelope == null || key == null)
+            throw new NullPointerException("The envelope and key to decrypt with must not be null.");
+        if (envelope.length < VALUE_HEADER_SIZE + GCM_NONCE_SIZE + GCM_TAG_SIZE ||
+                !Arrays.equals(VALUE_MAGIC, Arrays.copyOf(envelope, VALUE_MAGIC.length)))
+            throw new CryptoException("The given data is not an encrypted value.");
+        if (envelope[VALUE_MAGIC.length] != VALUE_VERSION)
+            throw new CryptoException("The version of the encrypted value is not supported.");
+        try {
+            Cipher cipher = initCipher(GCM_ALGORITHM_NAME, Cipher.DECRYPT_MODE, key,
+                    new GCMParameterSpec(GCM_TAG_SIZE * 8, envelope, VALUE_HEADER_SIZE, GCM_NONCE_SIZE));
+            cipher.updateAAD(envelope, 0, VALUE_HEADER_SIZE);
+            int offset = VALUE_HEADER_SIZE + GCM_NONCE_SIZE;
+            return cipher.doFinal(envelope, offset, envelope.length - offset);
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException(ERROR_CODE, e);
+        }
+    }
+
+    /**
+     * Splits a SIV key into its authentication and encryption keys.
+     * @param key The SIV key.
+     * @return The authentication and encryption keys.
+     */
+    private static SecretKey[] splitSIVKey(SecretKey key) {
+        if (key == null)
+            throw new NullPointerException("The given key was null.");
+        byte[] encoded = key.getEncoded();
+        if (encoded == null || (encoded.length != 32 && encoded.length != 48 && encoded.length != 64))
+            throw new InvalidInputException("The SIV key must be of 256, 384 or 512 bits.");
+        int half = encoded.length / 2;
+        return new SecretKey[]{new SecretKeySpec(encoded, 0, half, ALGORITHM_NAME),
+                new SecretKeySpec(encoded, half, half, ALGORITHM_NAME)};
+    }
+
+    /**
+     * Computes the synthetic IV of the given associated data and plain text with the S2V function of RFC 5297.
+     * @param macKey The authentication key.
+     * @param associatedData The associated data.
+     * @param plainText The plain text.
+     * @return The synthetic IV.
+     * @throws GeneralSecurityException If the cipher can't be used.
+     */
+    private static byte[] s2v(SecretKey macKey, byte[][] associatedData, byte[] plainText)
+            throws GeneralSecurityException {
+        if (associatedData != null && associatedData.length > 126)
+            throw new InvalidInputException("There can't be more than 126 parts of associated data.");
+        Cipher cipher = initCipher(ECB_ALGORITHM_NAME, Cipher.ENCRYPT_MODE, macKey, null);
+        byte[] firstSubkey = doubleBlock(cipher.doFinal(new byte[AES_BLOCK_SIZE]));
+        byte[] secondSubkey = doubleBlock(firstSubkey);
+
+        byte[] digest = cmac(cipher, firstSubkey, secondSubkey, new byte[AES_BLOCK_SIZE]);
+        if (associatedData != null) {
+            for (byte[] part : associatedData) {
+                if (part == null)
+                    throw new NullPointerException("The associated data must not contain nulls.");
+                digest = doubleBlock(digest);
+                xorInto(digest, cmac(cipher, firstSubkey, secondSubkey, part), 0);
+            }
+        }
+
+        byte[] last;
+        if (plainText.length >= AES_BLOCK_SIZE) {
+            last = plainText.clone();
+            xorInto(last, digest, last.length - AES_BLOCK_SIZE);
+        } else {
+            last = Arrays.copyOf(plainText, AES_BLOCK_SIZE);
+            last[plainText.length] = (byte) 0x80;
+            xorInto(last, doubleBlock(digest), 0);
+        }
+        return cmac(cipher, firstSubkey, secondSubkey, last);
+    }
+
+    /**
+     * Computes the AES-CMAC (RFC 4493) of some data.
+     * @param cipher The AES/ECB cipher initialized with the authentication key.
+     * @param firstSubkey The subkey for data that ends in a whole block.
+     * @param secondSubkey The subkey for data that has to be padded.
+     * @param data The data to authenticate.
+     * @return The CMAC of the data.
+     * @throws GeneralSecurityException If the cipher can't be used.
+     */
+    private static byte[] cmac(Cipher cipher, byte[] firstSubkey, byte[] secondSubkey, byte[] data)
+            throws GeneralSecurityException {
+        int blocks = Math.max(1, (data.length + AES_BLOCK_SIZE - 1) / AES_BLOCK_SIZE);
+        byte[] state = new byte[AES_BLOCK_SIZE];
+        for (int i = 0; i < blocks - 1; i++) {
+            for (int j = 0; j < AES_BLOCK_SIZE; j++)
+                state[j] ^= data[i * AES_BLOCK_SIZE + j];
+            cipher.doFinal(state, 0, AES_BLOCK_SIZE, state, 0);
+        }
+
+        int lastStart = (blocks - 1) * AES_BLOCK_SIZE;
+        int lastLength = data.length - lastStart;
+        for (int j = 0; j < lastLength; j++)
+            state[j] ^= data[lastStart + j];
+        if (lastLength == AES_BLOCK_SIZE) {
+            xorInto(state, firstSubkey, 0);
+        } else {
+            state[lastLength] ^= (byte) 0x80;
+            xorInto(state, secondSubkey, 0);
+        }
+        return cipher.doFinal(state);
+    }
+
+    /**
+     * Multiplies a block by x in GF(2^128), as used by CMAC and S2V.
+     * @param block The block to multiply.
+     * @return The multiplied block.
+     */
+    private static byte[] doubleBlock(byte[] block) {
+        byte[] result = new byte[AES_BLOCK_SIZE];
+        for (int i = 0; i < AES_BLOCK_SIZE - 1; i++)
+            result[i] = (byte) ((block[i] << 1) | ((block[i + 1] & 0xFF) >>> 7));
+        result[AES_BLOCK_SIZE - 1] = (byte) (block[AES_BLOCK_SIZE - 1] << 1);
+        if ((block[0] & 0x80) != 0)
+            result[AES_BLOCK_SIZE - 1] ^= (byte) 0x87;
+        return result;
+    }
+
+    /**
+     * XORs a block into an array at the given offset.
+     * @param target The array to modify.
+     * @param block The block to XOR.
+     * @param offset The offset in the array.
+     */
+    private static void xorInto(byte[] target, byte[] block, int offset) {
+        for (int i = 0; i < block.length; i++)
+            target[offset + i] ^= block[i];
+    }
+
+    /**
+     * Builds the counter for AES/CTR from the synthetic IV, clearing the 31st and 63rd bits as RFC 5297 requires.
+     * @param syntheticIv The synthetic IV.
+     * @return The counter.
+     */
+    private static IvParameterSpec sivCounter(byte[] syntheticIv) {
+        byte[] counter = syntheticIv.clone();
+        counter[8] &= 0x7F;
+        counter[12] &= 0x7F;
+        return new IvParameterSpec(counter);
+    }
+
+    /**
+     * Initializes the pooled cipher of the current thread for the given algorithm. GCM ciphers refuse to encrypt
+     * again with the key and IV they were last initialized with, so in that case a new cipher is used instead.
+     * @param algorithm The algorithm of the cipher.
+     * @param mode The cipher mode.
+     * @param key The key to use.
+     * @param iv The initialization vector to use.
+     * @return The initialized cipher.
+     * @throws GeneralSecurityException If the cipher can't be created or initialized.
+     */
+    private static Cipher initCipher(String algorithm, int mode, SecretKey key, AlgorithmParameterSpec iv)
+            throws GeneralSecurityException {
+        Cipher cipher = CIPHER_POOL.get(algorithm);
+        try {
+            cipher.init(mode, key, iv);
+        } catch (InvalidAlgorithmParameterException e) {
+            cipher = CIPHER_POOL.renew(algorithm, null);
+            cipher.init(mode, key, iv);
+        }
+        return cipher;
+    }
+
+    /**
+     * Encrypts or decrypts a file into another one through file channels, reusing the same direct buffers for every
+     * block of the file.
+     * @param mode The cipher mode, either {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}.
+     * @param algorithm The algorithm to use.
+     * @param key The key to use.
+     * @param iv The initialization vector to use.
+     * @param inputFile The file to read.
+     * @param outputFile The file to write.
+     * @param bufferSize The size of the input buffer.
+     */
+    private static void cryptFile(int mode, String algorithm, SecretKey key, AlgorithmParameterSpec iv,
+                                  File inputFile, File outputFile, int bufferSize) {
+        if (bufferSize <= 0)
+            throw new InvalidInputException("The buffer size must be greater than 0.");
+
+        try (FileChannel input = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ);
+             FileChannel output = FileChannel.open(outputFile.toPath(), StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Cipher cipher = initCipher(algorithm, mode, key, iv);
+
+            // Authenticated decryption holds back all the output until the end, but Java 8 still asks for room for
+            // all of it on every update, so its updates are done on arrays, which aren't checked
+            boolean authenticatedDecryption = mode == Cipher.DECRYPT_MODE && iv instanceof GCMParameterSpec;
+            // The buffers are flipped and cleared as Buffer, since the ByteBuffer overrides don't exist on Java 8
+            ByteBuffer inputBuffer = authenticatedDecryption ? ByteBuffer.allocate(bufferSize) :
+                    ByteBuffer.allocateDirect(bufferSize);
+            ByteBuffer outputBuffer = ByteBuffer.allocateDirect(authenticatedDecryption ? 0 :
+                    cipher.getOutputSize(bufferSize));
+            while (input.read(inputBuffer) != -1) {
+                ((Buffer) inputBuffer).flip();
+                ((Buffer) outputBuffer).clear();
+                if (authenticatedDecryption) {
+                    byte[] released = cipher.update(inputBuffer.array(), 0, inputBuffer.remaining());
+                    if (released != null && released.length > 0)
+                        writeFully(output, ByteBuffer.allocate(released.length).put(released));
+                } else {
+                    try {
+                        cipher.update(inputBuffer, outputBuffer);
+                    } catch (ShortBufferException e) {
+                        // Grown at least twice as big, so repeated growth can't add up to quadratic allocations
+                        outputBuffer = ByteBuffer.allocateDirect(Math.max(outputBuffer.capacity() * 2,
+                                cipher.getOutputSize(inputBuffer.remaining())));
+                        cipher.update(inputBuffer, outputBuffer);
+                    }
+                    writeFully(output, outputBuffer);
+                }
+                ((Buffer) inputBuffer).clear();
+            }
+
+            // Authenticated decryption releases all the output at the end, so it may need a bigger buffer
+            int finalSize = cipher.getOutputSize(0);
+            outputBuffer = finalSize > outputBuffer.capacity() ? ByteBuffer.allocate(finalSize) : outputBuffer;
+            ((Buffer) outputBuffer).clear();
+            cipher.doFinal(ByteBuffer.allocate(0), outputBuffer);
+            writeFully(output, outputBuffer);
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException(ERROR_CODE, e);
+        } catch (IOException e) {
+            throw new GenericException("Error writing file", e, INTERNAL_SERVER_ERROR.code());
+        }
+    }
+
+    /**
+     * Writes all the content of a buffer, from its start to its current position, to a channel.
+     * @param channel The channel to write to.
+     * @param buffer The buffer to write.
+     * @throws IOException If the channel can't be written.
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        ((Buffer) buffer).flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    /**
+     * Writes all the content of a buffer, from its start to its current position, to a position of a channel.
+     * Several threads can write to different positions of the same channel at the same time.
+     * @param channel The channel to write to.
+     * @param buffer The buffer to write.
+     * @param position The position of the channel to write at.
+     * @throws IOException If the channel can't be written.
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        ((Buffer) buffer).flip();
+        long current = position;
+        while (buffer.hasRemaining())
+            current += channel.write(buffer, current);
+    }
+
+    /**
+     * Creates the header of the segmented file format.
+     * @param chunkSize The size of the plain text chunks.
+     * @param plainSize The size of the plain text.
+     * @param baseNonce The nonce the chunk nonces are derived from.
+     * @return The header.
+     */
+    private static byte[] createSegmentedHeader(int chunkSize, long plainSize, byte[] baseNonce) {
+        return ByteBuffer.allocate(SEGMENTED_HEADER_SIZE)
+                .put(SEGMENTED_FILE_MAGIC)
+                .put(SEGMENTED_FILE_VERSION)
+                .put((byte) GCM_NONCE_SIZE)
+                .put((byte) GCM_TAG_SIZE)
+                .put((byte) 0)
+                .putInt(chunkSize)
+                .putLong(plainSize)
+                .put(baseNonce)
+                .array();
+    }
+
+    /**
+     * Reads and validates the header of the segmented file format, checking the size of the file too.
+     * @param input The channel of the encrypted file.
+     * @return The header.
+     * @throws IOException If the file can't be read.
+     */
+    private static byte[] readSegmentedHeader(FileChannel input) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(SEGMENTED_HEADER_SIZE);
+        long position = 0;
+        while (header.hasRemaining() && input.read(header, position) != -1)
+            position = header.position();
+
+        byte[] bytes = header.array();
+        if (header.hasRemaining() || !Arrays.equals(SEGMENTED_FILE_MAGIC, Arrays.copyOf(bytes, 4)) ||
+                bytes[4] != SEGMENTED_FILE_VERSION || bytes[5] != GCM_NONCE_SIZE || bytes[6] != GCM_TAG_SIZE)
+            throw new CryptoException("The file is not in the segmented AES format.");
+
+        int chunkSize = header.getInt(8);
+        long plainSize = header.getLong(12);
+        if (chunkSize <= 0 || plainSize < 0)
+            throw new CryptoException("The header of the segmented file is not valid.");
+        long chunks = countChunks(plainSize, chunkSize);
+        if (input.size() != SEGMENTED_HEADER_SIZE + plainSize + chunks * GCM_TAG_SIZE)
+            throw new CryptoException("The size of the segmented file doesn't match its header.");
+        return bytes;
+    }
+
+    /**
+     * Counts the chunks of the segmented file format. There is always at least one chunk, so that the header of
+     * empty files is authenticated too.
+     * @param plainSize The size of the plain text.
+     * @param chunkSize The size of the chunks.
+     * @return The number of chunks.
+     */
+    private static long countChunks(long plainSize, int chunkSize) {
+        return Math.max(1, (plainSize + chunkSize - 1) / chunkSize);
+    }
+
+    /**
+     * Initializes a cipher for a chunk of the segmented file format, deriving the nonce of the chunk by XOR-ing its
+     * index into the last 8 bytes of the base nonce, and authenticating the header with it.
+     * @param mode The cipher mode.
+     * @param key The key to use.
+     * @param baseNonce The base nonce of the file.
+     * @param chunk The index of the chunk.
+     * @param header The header of the file.
+     * @return The initialized cipher.
+     * @throws GeneralSecurityException If the cipher can't be initialized.
+     */
+    private static Cipher initChunkCipher(int mode, SecretKey key, byte[] baseNonce, long chunk, byte[] header)
+            throws GeneralSecurityException {
+        byte[] nonce = baseNonce.clone();
+        for (int i = 0; i < 8; i++)
+            nonce[nonce.length - 1 - i] ^= (byte) (chunk >>> (i * 8));
+        Cipher cipher = initCipher(GCM_ALGORITHM_NAME, mode, key, new GCMParameterSpec(GCM_TAG_SIZE * 8, nonce));
+        cipher.updateAAD(header);
+        return cipher;
+    }
+
+    /**
+     * Decrypts and authenticates a chunk of a file in the segmented format.
+     * @param input The channel of the encrypted file.
+     * @param key The key to use.
+     * @param header The header of the file.
+     * @param chunkSize The size of the plain text chunks.
+     * @param plainSize The size of the plain text.
+     * @param baseNonce The base nonce of the file.
+     * @param chunk The index of the chunk.
+     * @return The buffer with the plain text of the chunk, positioned at its end.
+     * @throws IOException If the file can't be read.
+     * @throws GeneralSecurityException If the chunk can't be decrypted or authenticated.
+     */
+    private static ByteBuffer decryptChunk(FileChannel input, SecretKey key, byte[] header, int chunkSize,
+                                           long plainSize, byte[] baseNonce, long chunk)
+            throws IOException, GeneralSecurityException {
+        int length = (int) Math.min(chunkSize, plainSize - chunk * chunkSize);
+        Cipher cipher = initChunkCipher(Cipher.DECRYPT_MODE, key, baseNonce, chunk, header);
+        MappedByteBuffer cipherText = input.map(FileChannel.MapMode.READ_ONLY,
+                SEGMENTED_HEADER_SIZE + chunk * (chunkSize + GCM_TAG_SIZE), (long) length + GCM_TAG_SIZE);
+        ByteBuffer plainText = ByteBuffer.allocate(cipher.getOutputSize(cipherText.remaining()));
+        cipher.doFinal(cipherText, plainText);
+        return plainText;
+    }
+
+    /**
+     * Runs an operation for every chunk of a file, spreading the chunks across as many workers as the executor
+     * can run in parallel, and waiting for all of them to finish.
+     * @param chunks The number of chunks.
+     * @param executor The executor to run the workers on.
+     * @param operation The operation to run for each chunk.
+     */
+    private static void runOnChunks(long chunks, Executor executor, ChunkOperation operation) {
+        int parallelism = executor instanceof ForkJoinPool ? ((ForkJoinPool) executor).getParallelism() :
+                Runtime.getRuntime().availableProcessors();
+        int workers = (int) Math.max(1, Math.min(parallelism, chunks));
+        List<CompletableFuture<Void>> tasks = new ArrayList<>(workers);
+        for (int worker = 0; worker < workers; worker++) {
+            long first = worker;
+            tasks.add(CompletableFuture.runAsync(() -> {
+                try {
+                    for (long chunk = first; chunk < chunks; chunk += workers)
+                        operation.run(chunk);
+                } catch (GeneralSecurityException e) {
+                    throw new CryptoException(ERROR_CODE, e);
+                } catch (IOException e) {
+                    throw new GenericException("Error processing file", e, INTERNAL_SERVER_ERROR.code());
+                }
+            }, executor));
+        }
+
+        try {
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Deletes a file if it exists, without failing, since it's only called while another error is being thrown.
+     * @param file The file to delete.
+     */
+    private static void deleteIfExists(File file) {
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            // The original error is more relevant than this one
+        }
+    }
+
+    /**
+     * Operation to run for a chunk of a file.
+     */
+    @FunctionalInterface
+    private interface ChunkOperation {
+        void run(long chunk) throws IOException, GeneralSecurityException;
+    }
 }
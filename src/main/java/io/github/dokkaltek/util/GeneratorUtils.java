@@ -1,6 +1,7 @@
 package io.github.dokkaltek.util;
 
 import io.github.dokkaltek.exception.CryptoException;
+import io.github.dokkaltek.exception.InvalidInputException;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 
@@ -14,6 +15,8 @@ import java.util.Random;
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public final class GeneratorUtils {
     private static final Random RANDOM = new Random();
+    private static final String DEFAULT_NONCE_RANDOM_ALGORITHM = "DRBG";
+    private static volatile ThreadLocal<SecureRandom> nonceRandom = nonceRandomFor(DEFAULT_NONCE_RANDOM_ALGORITHM);
     private static final String ALPHANUMERIC_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ-_abcdefghijklmnopqrstuvwxyz0123456789";
     private static final String LOREM_IPSUM_TEXT = "Lorem ipsum dolor sit amet, consectetur adipiscing elit, " +
             "sed do eiusmod tempor incididunt ut labore et dolore magna aliqua. Ut enim ad minim veniam, quis " +
@@ -132,4 +135,43 @@ public final class GeneratorUtils {
             throw new CryptoException("No strong algorithm available", e);
         }
     }
+
+    /**
+     * Gets the non-blocking {@link SecureRandom} of the current thread, meant for values that must be unpredictable
+     * but are not secret keys, like IVs and nonces. Each thread has its own instance, seeded once from the system
+     * source, so generating values never waits for entropy or contends with other threads. The strong instance of
+     * {@link #getSecureRandomInstance()} should still be used for keys.
+     * @return The non-blocking instance of the current thread.
+     */
+    public static SecureRandom getNonceRandomInstance() {
+        return nonceRandom.get();
+    }
+
+    /**
+     * Sets the algorithm of the instances returned by {@link #getNonceRandomInstance()}, which is <code>DRBG</code>
+     * by default. If the algorithm is not available, the default {@link SecureRandom} of the platform is used, which
+     * doesn't block either. Threads create their new instances the next time they need one.
+     * @param algorithm The name of the {@link SecureRandom} algorithm, like <code>DRBG</code> or
+     *                  <code>NativePRNGNonBlocking</code>.
+     */
+    public static void setNonceRandomAlgorithm(String algorithm) {
+        if (algorithm == null || algorithm.isEmpty())
+            throw new InvalidInputException("The given algorithm was null or empty.");
+        nonceRandom = nonceRandomFor(algorithm);
+    }
+
+    /**
+     * Creates the thread-local instances for the given algorithm.
+     * @param algorithm The name of the {@link SecureRandom} algorithm.
+     * @return The thread-local instances.
+     */
+    private static ThreadLocal<SecureRandom> nonceRandomFor(String algorithm) {
+        return ThreadLocal.withInitial(() -> {
+            try {
+                return SecureRandom.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                return new SecureRandom();
+            }
+        });
+    }
 }
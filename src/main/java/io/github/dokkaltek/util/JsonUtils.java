@@ -2,15 +2,25 @@ package io.github.dokkaltek.util;
 
 
 import com.fasterxml.jackson.core.JacksonException;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
 import com.fasterxml.jackson.databind.json.JsonMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.util.TokenBuffer;
 import io.github.dokkaltek.exception.InvalidInputException;
 import io.github.dokkaltek.exception.JSONException;
+import io.github.dokkaltek.helper.BatchParseResult;
+import io.github.dokkaltek.helper.CompactMap;
+import io.github.dokkaltek.helper.IncrementalJsonParser;
+import io.github.dokkaltek.helper.JsonAccessor;
+import io.github.dokkaltek.helper.ParseResult;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 import lombok.extern.java.Log;
@@ -19,11 +29,20 @@ import lombok.extern.java.Log;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.RandomAccess;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
 
 import static io.github.dokkaltek.util.StringUtils.isBlankOrNull;
 
@@ -33,7 +52,11 @@ import static io.github.dokkaltek.util.StringUtils.isBlankOrNull;
 @Log
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public final class JsonUtils {
+    private static final int MIN_ITEMS_PER_WORKER = 32;
+    private static final AtomicLong NEXT_FAILURE_LOG_TIME = new AtomicLong();
+    private static final AtomicLong SUPPRESSED_FAILURE_LOGS = new AtomicLong();
     private static ObjectMapper objectMapper = initObjectMapper();
+    private static volatile long failureLogIntervalNanos = -1;
 
     /**
      * Changes the current {@link ObjectMapper} used for json operations for another one.
@@ -51,6 +74,28 @@ public final class JsonUtils {
         return objectMapper;
     }
 
+    /**
+     * Enables logging the failures of the <code>*OrElse</code> methods, which is disabled by default. Messages are
+     * only formatted if they are going to be written, and at most one message is written per interval, adding the
+     * number of messages suppressed since the last one.
+     * @param minInterval The minimum time between two logged failures. Zero logs every failure.
+     * @param unit The unit of the interval.
+     */
+    public static void enableFailureLogging(long minInterval, TimeUnit unit) {
+        if (minInterval < 0 || unit == null)
+            throw new InvalidInputException("The interval must not be negative and the unit must not be null.");
+        SUPPRESSED_FAILURE_LOGS.set(0);
+        NEXT_FAILURE_LOG_TIME.set(System.nanoTime());
+        failureLogIntervalNanos = unit.toNanos(minInterval);
+    }
+
+    /**
+     * Disables logging the failures of the <code>*OrElse</code> methods.
+     */
+    public static void disableFailureLogging() {
+        failureLogIntervalNanos = -1;
+    }
+
     /**
      * Validates that a given json string is valid.
      * @param json The json string to validate.
@@ -113,8 +158,7 @@ public final class JsonUtils {
         try {
             return objectMapper.writeValueAsString(object);
         } catch (JacksonException e) {
-            log.info(String.format("Error converting object to json string, returning default value '%s' instead.",
-                    defaultValue));
+            logFailure("Error converting object to json string, returning default value '%s' instead.", defaultValue);
             return defaultValue;
         }
     }
@@ -148,15 +192,27 @@ public final class JsonUtils {
      * @throws JSONException If the object cannot be converted.
      */
     public static <T> T parseJSONOrElse(String json, Class<T> clazz, T defaultValue) {
+        ParseResult<T> result = tryParseJSON(json, clazz);
+        if (result.isFailure())
+            logFailure("Error converting json string to object, returning default value '%s' instead.", defaultValue);
+        return result.orElse(defaultValue);
+    }
+
+    /**
+     * Converts a json string to the given class object without throwing or logging if it can't be converted.
+     * @param json The json string to convert.
+     * @param clazz The class to convert the json string to.
+     * @return The result of the conversion, which will be empty if the json string is null or empty.
+     * @param <T> The type of the object to convert the json string to.
+     */
+    public static <T> ParseResult<T> tryParseJSON(String json, Class<T> clazz) {
         if (isBlankOrNull(json))
-            return defaultValue;
+            return ParseResult.empty();
 
         try {
-            return objectMapper.readValue(json, clazz);
+            return ParseResult.success(objectMapper.readValue(json, clazz));
         } catch (JacksonException e) {
-            log.info(String.format("Error converting json string to object, returning default value '%s' instead.",
-                    defaultValue));
-            return defaultValue;
+            return ParseResult.failure(e);
         }
     }
 
@@ -192,6 +248,26 @@ public final class JsonUtils {
         }
     }
 
+    /**
+     * Converts a json string to a read-only map, using {@link CompactMap} instances sized to the number of fields for
+     * objects at any depth. Repeated field names are shared across documents, since Jackson interns them by default,
+     * and they are interned here if the factory of the object mapper has {@link JsonFactory.Feature#INTERN_FIELD_NAMES}
+     * disabled. This is intended for keeping lots of decoded documents with the same fields in memory.
+     * @param json The json string to convert.
+     * @return The compact map representation of the json string.
+     * @param <T> The class type of the values of the map.
+     * @throws JSONException If the json string is not a valid json object.
+     */
+    public static <T> Map<String, T> convertJSONToCompactMap(String json) {
+        if (isBlankOrNull(json))
+            return Collections.emptyMap();
+        try (JsonParser parser = objectMapper.createParser(json)) {
+            return readCompactMap(parser);
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+    }
+
     /**
      * Converts a json string to a map.
      * @param object The json string to convert.
@@ -268,17 +344,84 @@ public final class JsonUtils {
      * @throws JSONException If the object cannot be converted.
      */
     public static <T> T parseByteArrayOrElse(byte[] byteArray, Class<T> clazz, T defaultValue) {
+        ParseResult<T> result = tryParseByteArray(byteArray, clazz);
+        if (result.isFailure())
+            logFailure("Error converting json bytes to object, returning default value '%s' instead.", defaultValue);
+        return result.orElse(defaultValue);
+    }
+
+    /**
+     * Converts a byte array to an object without throwing or logging if it can't be converted.
+     * @param byteArray The byte array to convert.
+     * @param clazz The class to convert the byte array to.
+     * @return The result of the conversion, which will be empty if the byte array is null or empty.
+     * @param <T> The class type of the return object.
+     */
+    public static <T> ParseResult<T> tryParseByteArray(byte[] byteArray, Class<T> clazz) {
         if (byteArray == null || byteArray.length == 0)
-            return defaultValue;
+            return ParseResult.empty();
         try {
-            return objectMapper.readValue(byteArray, clazz);
+            return ParseResult.success(objectMapper.readValue(byteArray, clazz));
         } catch (IOException e) {
-            log.info(String.format("Error converting json bytes to object, returning default value '%s' instead.",
-                    defaultValue));
-            return defaultValue;
+            return ParseResult.failure(e);
         }
     }
 
+    /**
+     * Converts a batch of byte arrays to objects in parallel using the {@link ForkJoinPool#commonPool()}, which is
+     * best suited for CPU-bound decoding. Null or empty items will be null in the result, and items that fail to be
+     * parsed will be reported in the result instead of aborting the whole batch.
+     * @param batch The batch of byte arrays to convert.
+     * @param clazz The class to convert the byte arrays to.
+     * @return The result of the batch, keeping the same order as the input batch.
+     * @param <T> The class type of the parsed objects.
+     */
+    public static <T> BatchParseResult<T> parseAll(List<byte[]> batch, Class<T> clazz) {
+        return parseAll(batch, clazz, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Converts a batch of byte arrays to objects, splitting the batch across the workers of the given executor.
+     * Null or empty items will be null in the result, and items that fail to be parsed will be reported in the result
+     * instead of aborting the whole batch.
+     * @param batch The batch of byte arrays to convert.
+     * @param clazz The class to convert the byte arrays to.
+     * @param executor The executor to run the parsing on.
+     * @return The result of the batch, keeping the same order as the input batch.
+     * @param <T> The class type of the parsed objects.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> BatchParseResult<T> parseAll(List<byte[]> batch, Class<T> clazz, Executor executor) {
+        if (batch == null || batch.isEmpty())
+            return new BatchParseResult<>((T[]) new Object[0], Collections.emptyMap());
+        if (clazz == null || executor == null)
+            throw new InvalidInputException("The given class or executor was null.");
+
+        List<byte[]> items = batch instanceof RandomAccess ? batch : new ArrayList<>(batch);
+        ObjectReader reader = objectMapper.readerFor(clazz);
+        T[] values = (T[]) new Object[items.size()];
+        Map<Integer, JSONException> errors = new ConcurrentHashMap<>();
+
+        int parallelism = executor instanceof ForkJoinPool ? ((ForkJoinPool) executor).getParallelism() :
+                Runtime.getRuntime().availableProcessors();
+        int workers = Math.max(1, Math.min(parallelism, items.size() / MIN_ITEMS_PER_WORKER));
+        if (workers == 1) {
+            parseRange(reader, items, 0, items.size(), values, errors);
+            return new BatchParseResult<>(values, errors);
+        }
+
+        int chunkSize = (items.size() + workers - 1) / workers;
+        List<CompletableFuture<Void>> tasks = new ArrayList<>(workers);
+        for (int start = 0; start < items.size(); start += chunkSize) {
+            int from = start;
+            int to = Math.min(items.size(), start + chunkSize);
+            tasks.add(CompletableFuture.runAsync(() -> parseRange(reader, items, from, to, values, errors),
+                    executor));
+        }
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+        return new BatchParseResult<>(values, errors);
+    }
+
     /**
      * Converts a byte array to a list of the return type. If the byte array is null or empty it returns an empty list.
      * @param byteArray The byte array to convert.
@@ -315,6 +458,26 @@ public final class JsonUtils {
         }
     }
 
+    /**
+     * Converts a byte array to a read-only map, using {@link CompactMap} instances sized to the number of fields for
+     * objects at any depth. Repeated field names are shared across documents like in
+     * {@link #convertJSONToCompactMap(String)}. This is intended for keeping lots of decoded documents with the same
+     * fields in memory.
+     * @param byteArray The byte array to convert.
+     * @return The compact map representation of the byte array.
+     * @param <T> The class type of the values of the map.
+     * @throws JSONException If the byte array is not a valid json object.
+     */
+    public static <T> Map<String, T> parseByteArrayToCompactMap(byte[] byteArray) {
+        if (byteArray == null || byteArray.length == 0)
+            return Collections.emptyMap();
+        try (JsonParser parser = objectMapper.createParser(byteArray)) {
+            return readCompactMap(parser);
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+    }
+
     /**
      * Converts a byte array to a parametrized object. If the byte array is null or empty it returns null.
      * @param byteArray The byte array to convert.
@@ -361,14 +524,27 @@ public final class JsonUtils {
      * @throws JSONException If the object cannot be converted.
      */
     public static <T> T parseInputStreamOrElse(InputStream stream, Class<T> clazz, T defaultValue) {
+        ParseResult<T> result = tryParseInputStream(stream, clazz);
+        if (result.isFailure())
+            logFailure("Error converting json input stream to object, returning default value '%s' instead.",
+                    defaultValue);
+        return result.orElse(defaultValue);
+    }
+
+    /**
+     * Converts an input stream to an object without throwing or logging if it can't be converted.
+     * @param stream The input stream to convert.
+     * @param clazz The class to convert the input stream to.
+     * @return The result of the conversion, which will be empty if the input stream is null.
+     * @param <T> The class type of the return object.
+     */
+    public static <T> ParseResult<T> tryParseInputStream(InputStream stream, Class<T> clazz) {
         if (stream == null)
-            return defaultValue;
+            return ParseResult.empty();
         try {
-            return objectMapper.readValue(stream, clazz);
+            return ParseResult.success(objectMapper.readValue(stream, clazz));
         } catch (IOException e) {
-            log.info(String.format("Error converting json input stream to object, " +
-                            "returning default value '%s' instead.", defaultValue));
-            return defaultValue;
+            return ParseResult.failure(e);
         }
     }
 
@@ -425,6 +601,30 @@ public final class JsonUtils {
         }
     }
 
+    /**
+     * Creates a push-style parser to decode json that arrives in chunks of bytes, like the bodies of requests on
+     * non-blocking servers, without having to buffer the whole input first. If the root of the input is an array, each
+     * of its elements will be decoded on its own as soon as it is complete.
+     * @param clazz The class of the decoded values.
+     * @return The incremental parser, to be used for a single input.
+     * @param <T> The type of the decoded values.
+     */
+    public static <T> IncrementalJsonParser<T> incrementalParser(Class<T> clazz) {
+        return new IncrementalJsonParser<>(objectMapper, clazz, false);
+    }
+
+    /**
+     * Creates a push-style parser to decode json that arrives in chunks of {@link java.nio.ByteBuffer}s, which avoids
+     * copying direct buffers to the heap. If the root of the input is an array, each of its elements will be decoded
+     * on its own as soon as it is complete.
+     * @param clazz The class of the decoded values.
+     * @return The incremental parser, to be used for a single input.
+     * @param <T> The type of the decoded values.
+     */
+    public static <T> IncrementalJsonParser<T> incrementalByteBufferParser(Class<T> clazz) {
+        return new IncrementalJsonParser<>(objectMapper, clazz, true);
+    }
+
     /**
      * Reads a json and converts it into a {@link JsonNode}. It returns null if the json is null or empty.
      * You can then read any field using the methods of the {@link JsonNode} class, like:
@@ -597,6 +797,19 @@ public final class JsonUtils {
         return objectMapper.createArrayNode();
     }
 
+    /**
+     * Gets a nested value of a json given by a json pointer, like <code>/a/b/0/c</code>. The path is compiled once and
+     * cached, so for paths evaluated on many nodes this is cheaper than chaining {@link JsonNode#get(String)} calls.
+     * Use {@link JsonAccessor} directly to read primitive values without boxing them.
+     * @param node The node to get the value from.
+     * @param path The json pointer of the value.
+     * @return The value at the path, or null if the path does not exist.
+     * @see JsonAccessor#compile(String)
+     */
+    public static JsonNode getFieldAtPath(JsonNode node, String path) {
+        return JsonAccessor.compile(path).resolve(node);
+    }
+
     /**
      * Gets a field of a json as a string.
      * @param node The node to get the field from.
@@ -611,7 +824,7 @@ public final class JsonUtils {
         if (field == null || field.isMissingNode()) {
             return null;
         }
-        return node.get(fieldName).asText();
+        return field.asText();
     }
 
     /**
@@ -628,7 +841,7 @@ public final class JsonUtils {
         if (field == null || field.isMissingNode()) {
             return null;
         }
-        return node.get(fieldName).asInt();
+        return field.asInt();
     }
 
     /**
@@ -645,7 +858,7 @@ public final class JsonUtils {
         if (field == null || field.isMissingNode()) {
             return null;
         }
-        return node.get(fieldName).asBoolean();
+        return field.asBoolean();
     }
 
     /**
@@ -662,7 +875,7 @@ public final class JsonUtils {
         if (field == null || field.isMissingNode()) {
             return null;
         }
-        return node.get(fieldName).asDouble();
+        return field.asDouble();
     }
 
     /**
@@ -679,14 +892,14 @@ public final class JsonUtils {
         if (field == null || field.isMissingNode()) {
             return null;
         }
-        return node.get(fieldName).asLong();
+        return field.asLong();
     }
 
     /**
-     * Gets a field of a json as a long.
+     * Gets a field of a json as an optional.
      * @param node The node to get the field from.
      * @param fieldName The field name to get.
-     * @return The field value as a long or null if the field does not exist.
+     * @return The field value as an optional, which is empty if the field does not exist.
      */
     public static Optional<JsonNode> getFieldAsOptional(JsonNode node, String fieldName) {
         if (node == null) {
@@ -696,7 +909,7 @@ public final class JsonUtils {
         if (field == null || field.isMissingNode()) {
             return Optional.empty();
         }
-        return node.get(fieldName).asOptional();
+        return field.asOptional();
     }
 
     /**
@@ -717,6 +930,117 @@ public final class JsonUtils {
         }
     }
 
+    /**
+     * Parses a range of a batch of byte arrays, storing the results and errors by the index of the batch.
+     * @param reader The reader to use.
+     * @param batch The batch of byte arrays.
+     * @param from The first index to parse, inclusive.
+     * @param to The last index to parse, exclusive.
+     * @param values The array to store the parsed values in.
+     * @param errors The map to store the errors in.
+     */
+    private static <T> void parseRange(ObjectReader reader, List<byte[]> batch, int from, int to, T[] values,
+                                       Map<Integer, JSONException> errors) {
+        for (int i = from; i < to; i++) {
+            byte[] item = batch.get(i);
+            if (item == null || item.length == 0)
+                continue;
+            try {
+                values[i] = reader.readValue(item);
+            } catch (IOException | RuntimeException e) {
+                // Deserializers can also fail with runtime exceptions, which must not abort the whole batch
+                errors.put(i, new JSONException(e));
+            }
+        }
+    }
+
+    /**
+     * Reads the root json object of a parser as a compact map.
+     * @param parser The parser to read from.
+     * @return The compact map.
+     * @throws IOException If the content is not a valid json object.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> Map<String, T> readCompactMap(JsonParser parser) throws IOException {
+        JsonFactory factory = objectMapper.getFactory();
+        boolean internKeys = !factory.isEnabled(JsonFactory.Feature.CANONICALIZE_FIELD_NAMES) ||
+                !factory.isEnabled(JsonFactory.Feature.INTERN_FIELD_NAMES);
+        if (parser.nextToken() != JsonToken.START_OBJECT)
+            throw MismatchedInputException.from(parser, Map.class, "The given json is not an object.");
+        return (Map<String, T>) readCompactValue(parser, internKeys);
+    }
+
+    /**
+     * Reads the value at the current token of a parser, using compact maps for objects.
+     * @param parser The parser to read from.
+     * @param internKeys True to intern the field names, when the parser doesn't.
+     * @return The value read.
+     * @throws IOException If the content is not valid json.
+     */
+    private static Object readCompactValue(JsonParser parser, boolean internKeys) throws IOException {
+        switch (parser.currentToken()) {
+            case START_OBJECT:
+                String[] keys = new String[8];
+                Object[] values = new Object[8];
+                int fields = 0;
+                for (String name = parser.nextFieldName(); name != null; name = parser.nextFieldName()) {
+                    if (fields == keys.length) {
+                        keys = Arrays.copyOf(keys, fields << 1);
+                        values = Arrays.copyOf(values, fields << 1);
+                    }
+                    keys[fields] = internKeys ? name.intern() : name;
+                    parser.nextToken();
+                    values[fields++] = readCompactValue(parser, internKeys);
+                }
+                return new CompactMap<>(keys, values, fields);
+            case START_ARRAY:
+                ArrayList<Object> list = new ArrayList<>();
+                while (parser.nextToken() != JsonToken.END_ARRAY)
+                    list.add(readCompactValue(parser, internKeys));
+                list.trimToSize();
+                return list;
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return parser.getNumberValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_EMBEDDED_OBJECT:
+                return parser.getEmbeddedObject();
+            case VALUE_NULL:
+                return null;
+            default:
+                throw MismatchedInputException.from(parser, Object.class,
+                        "Unexpected token " + parser.currentToken());
+        }
+    }
+
+    /**
+     * Logs a failure of an <code>*OrElse</code> method if failure logging is enabled and the rate limit allows it.
+     * The message is only formatted if it is going to be written.
+     * @param message The message format, with a placeholder for the default value.
+     * @param defaultValue The default value returned instead.
+     */
+    private static void logFailure(String message, Object defaultValue) {
+        long interval = failureLogIntervalNanos;
+        if (interval < 0 || !log.isLoggable(Level.INFO))
+            return;
+
+        long now = System.nanoTime();
+        long next = NEXT_FAILURE_LOG_TIME.get();
+        if (now - next < 0 || !NEXT_FAILURE_LOG_TIME.compareAndSet(next, now + interval)) {
+            SUPPRESSED_FAILURE_LOGS.incrementAndGet();
+            return;
+        }
+
+        long suppressed = SUPPRESSED_FAILURE_LOGS.getAndSet(0);
+        log.log(Level.INFO, () -> suppressed == 0 ? String.format(message, defaultValue) :
+                String.format(message + " %d similar failures were suppressed.", defaultValue, suppressed));
+    }
+
     /**
      * Initializes the default object mapper.
      * @return The default object mapper.
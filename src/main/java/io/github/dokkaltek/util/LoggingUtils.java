@@ -1,10 +1,26 @@
 package io.github.dokkaltek.util;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import io.github.dokkaltek.constant.literal.SpecialChars;
+import io.github.dokkaltek.helper.LazyLogValue;
+import io.github.dokkaltek.helper.LogMasker;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 import org.owasp.encoder.Encode;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -17,9 +33,15 @@ import static io.github.dokkaltek.util.StringUtils.isBlankOrNull;
 public class LoggingUtils {
     private static final String MASKED_FIELD = "*****";
     private static final String MASK_REGEX = "+(\\s*[=:]\\s*)(\\S*(?<!,))";
+    private static final String JSON_MASK_REGEX = ")\"\\s*:\\s*(\"(?:[^\"\\\\]|\\\\.)*\"?|[{\\[]|[^,}\\]\\s]*)";
+    private static final int MAX_CACHED_MASKERS = 256;
+    private static final ConcurrentHashMap<List<String>, LogMasker> MASKER_CACHE = new ConcurrentHashMap<>();
+    private static final LogMasker EMPTY_MASKER = LogMasker.of();
 
     /**
-     * Encodes the passed object to avoid log forgery attacks.
+     * Encodes the passed object to avoid log forgery attacks. Strings with nothing to escape, which are most log
+     * arguments, are returned as they are without allocating, and the rest are only escaped from their first unsafe
+     * char onward.
      * @param object The object to encode as a string. Must have a valid .toString() method, or be a String.
      * @return The encoded object as a string.
      */
@@ -35,6 +57,27 @@ public class LoggingUtils {
         return Encode.forJava(object.toString());
     }
 
+    /**
+     * Wraps an object so that it's only encoded like {@link #encodeForLog(Object)} when it's written to the log, and
+     * only once. Meant for parameterized loggers, so disabled log levels don't pay for the encoding.
+     * @param object The object to encode.
+     * @return The lazy value, whose <code>toString()</code> returns the encoded object.
+     */
+    public static LazyLogValue lazyEncoded(Object object) {
+        return new LazyLogValue(() -> encodeForLog(object));
+    }
+
+    /**
+     * Wraps a message so that its fields are only masked like {@link #maskField(String, String...)} when it's written
+     * to the log, and only once. Meant for parameterized loggers, so disabled log levels don't pay for the masking.
+     * @param message The message to mask.
+     * @param fieldsToMask The fields to mask.
+     * @return The lazy value, whose <code>toString()</code> returns the masked message.
+     */
+    public static LazyLogValue lazyMasked(String message, String... fieldsToMask) {
+        return new LazyLogValue(() -> maskField(message, fieldsToMask));
+    }
+
     /**
      * Masks the passed field of a message.
      * @param message The message to mask.
@@ -46,17 +89,7 @@ public class LoggingUtils {
      * <code>password=*****</code>
      */
     public static String maskField(String message, String... fieldsToMask) {
-        if (isBlankOrNull(message)) {
-            return SpecialChars.EMPTY_STRING;
-        }
-
-        String maskRegex = generateMaskingRegex(fieldsToMask);
-
-        if (isBlankOrNull(maskRegex)) {
-            return message;
-        }
-
-        return message.replaceAll(maskRegex, "$1$2" + MASKED_FIELD);
+        return masker(fieldsToMask).mask(message);
     }
 
     /**
@@ -72,35 +105,7 @@ public class LoggingUtils {
      * <code>email=s****email@email.com</code>
      */
     public static String maskFieldRange(String message, int start, int end, String... fieldsToMask) {
-        if (isBlankOrNull(message)) {
-            return SpecialChars.EMPTY_STRING;
-        }
-
-        if (start >= end) {
-            return message;
-        }
-
-        String maskRegex = generateMaskingRegex(fieldsToMask);
-
-        if (isBlankOrNull(maskRegex)) {
-            return message;
-        }
-
-        Matcher matcher = Pattern.compile(maskRegex).matcher(message);
-
-        while (matcher.find()) {
-            String field = matcher.group(1);
-            String splitter = matcher.group(2);
-            String value = matcher.group(3);
-            int actualEnd = Math.min(value.length(), end);
-
-            if (value.length() > start) {
-                String maskedValue = value.substring(0, start) + StringUtils.repeat(SpecialChars.ASTERISK,
-                        actualEnd - start) + value.substring(actualEnd);
-                message = message.replace(field + splitter + value, field + splitter + maskedValue);
-            }
-        }
-        return message;
+        return masker(fieldsToMask).maskRange(message, start, end);
     }
 
     /**
@@ -117,33 +122,7 @@ public class LoggingUtils {
      * <code>email=**********@email.com</code>
      */
     public static String maskFieldUntilChar(String message, char charToStopAt, String... fieldsToMask) {
-        if (isBlankOrNull(message)) {
-            return SpecialChars.EMPTY_STRING;
-        }
-
-        String maskRegex = generateMaskingRegex(fieldsToMask);
-
-        if (isBlankOrNull(maskRegex)) {
-            return message;
-        }
-
-        Matcher matcher = Pattern.compile(maskRegex).matcher(message);
-
-        while (matcher.find()) {
-            String field = matcher.group(1);
-            String splitter = matcher.group(2);
-            String value = matcher.group(3);
-            int end = value.lastIndexOf(charToStopAt);
-
-            String maskedValue;
-            if (end > 0) {
-                maskedValue = StringUtils.repeat(SpecialChars.ASTERISK, end) + value.substring(end);
-            } else {
-                maskedValue = StringUtils.repeat(SpecialChars.ASTERISK, value.length());
-            }
-            message = message.replace(field + splitter + value, field + splitter + maskedValue);
-        }
-        return message;
+        return masker(fieldsToMask).maskUntilChar(message, charToStopAt);
     }
 
     /**
@@ -164,41 +143,62 @@ public class LoggingUtils {
      */
     public static String maskFieldUntilCharWithRange(String message, char charToStopAt, int start, int end,
                                                      String... fieldsToMask) {
-        if (isBlankOrNull(message)) {
-            return SpecialChars.EMPTY_STRING;
-        }
-
-        String maskRegex = generateMaskingRegex(fieldsToMask);
+        return masker(fieldsToMask).maskUntilCharWithRange(message, charToStopAt, start, end);
+    }
 
-        if (isBlankOrNull(maskRegex)) {
-            return message;
+    /**
+     * Masks the values of the given fields of a json, streaming its tokens from a parser to a generator without
+     * building a tree, so it's cheap enough for every logged request body. Values that are objects or arrays are
+     * masked as a whole. If the json is not valid, like a truncated one, the values of the fields are masked as text
+     * instead, both as json members like <code>"password":"*****"</code> and like
+     * {@link #maskField(String, String...)}.
+     * @param json The json to mask.
+     * @param fieldPaths The fields to mask. A name like <code>password</code> masks the fields with that name at any
+     *                   depth, and a json pointer like <code>/user/password</code> masks only the field at that path.
+     * @return The masked json, without pretty-printing. For example: <br>
+     * <code>{"user":{"password":"my secret"}}</code> <br>
+     * Would become: <br>
+     * <code>{"user":{"password":"*****"}}</code>
+     */
+    public static String maskJson(String json, Set<String> fieldPaths) {
+        if (isBlankOrNull(json))
+            return SpecialChars.EMPTY_STRING;
+        if (fieldPaths == null || fieldPaths.isEmpty())
+            return json;
+
+        JsonFactory factory = JsonUtils.getObjectMapperInstance().getFactory();
+        StringWriter output = new StringWriter(json.length() + MASKED_FIELD.length());
+        try (JsonParser parser = factory.createParser(json);
+             JsonGenerator generator = factory.createGenerator(output)) {
+            maskJsonTokens(parser, generator, fieldPaths);
+        } catch (IOException e) {
+            return maskInvalidJson(json, fieldPaths);
         }
+        return output.toString();
+    }
 
-        Matcher matcher = Pattern.compile(maskRegex).matcher(message);
-
-        while (matcher.find()) {
-            String field = matcher.group(1);
-            String splitter = matcher.group(2);
-            String value = matcher.group(3);
-            int charIndex = value.lastIndexOf(charToStopAt);
-
-            String maskedValue;
-            if (charIndex > 0) {
-                String subValue = value.substring(charIndex + 1);
-                if (start < end) {
-                    int actualEnd = Math.min(subValue.length(), end);
-                    if (subValue.length() > start) {
-                        subValue = subValue.substring(0, start) + StringUtils.repeat(SpecialChars.ASTERISK,
-                                actualEnd - start) + subValue.substring(actualEnd);
-                    }
-                }
-                maskedValue = StringUtils.repeat(SpecialChars.ASTERISK, charIndex) + charToStopAt + subValue;
-            } else {
-                maskedValue = StringUtils.repeat(SpecialChars.ASTERISK, value.length());
-            }
-            message = message.replace(field + splitter + value, field + splitter + maskedValue);
+    /**
+     * Masks the values of the given fields of a json encoded in UTF-8, like {@link #maskJson(String, Set)}.
+     * @param json The json to mask.
+     * @param fieldPaths The names or json pointers of the fields to mask.
+     * @return The masked json, encoded in UTF-8.
+     */
+    public static byte[] maskJson(byte[] json, Set<String> fieldPaths) {
+        if (json == null || json.length == 0)
+            return new byte[0];
+        if (fieldPaths == null || fieldPaths.isEmpty())
+            return json;
+
+        JsonFactory factory = JsonUtils.getObjectMapperInstance().getFactory();
+        ByteArrayOutputStream output = new ByteArrayOutputStream(json.length + MASKED_FIELD.length());
+        try (JsonParser parser = factory.createParser(json);
+             JsonGenerator generator = factory.createGenerator(output, JsonEncoding.UTF8)) {
+            maskJsonTokens(parser, generator, fieldPaths);
+        } catch (IOException e) {
+            return maskInvalidJson(new String(json, StandardCharsets.UTF_8), fieldPaths)
+                    .getBytes(StandardCharsets.UTF_8);
         }
-        return message;
+        return output.toByteArray();
     }
 
     /**
@@ -239,4 +239,127 @@ public class LoggingUtils {
 
         return fieldSelector.append(maskRegex).toString();
     }
+
+    /**
+     * Gets the masker of the given fields from the cache, creating it the first time. The cache holds up to 256
+     * maskers and is cleared when full.
+     * @param fieldsToMask The fields to mask.
+     * @return The masker of the fields.
+     */
+    private static LogMasker masker(String... fieldsToMask) {
+        if (fieldsToMask == null)
+            return EMPTY_MASKER;
+        List<String> cacheKey = Arrays.asList(fieldsToMask);
+        LogMasker masker = MASKER_CACHE.get(cacheKey);
+        if (masker != null)
+            return masker;
+
+        if (MASKER_CACHE.size() >= MAX_CACHED_MASKERS)
+            MASKER_CACHE.clear();
+        // The arguments array could be modified by the caller afterward, so it's copied for the key
+        return MASKER_CACHE.computeIfAbsent(new ArrayList<>(cacheKey), key -> LogMasker.of(fieldsToMask));
+    }
+
+    /**
+     * Copies the tokens of a parser to a generator, replacing the values of the fields to mask.
+     * @param parser The parser of the json to mask.
+     * @param generator The generator of the masked json.
+     * @param fieldPaths The names or json pointers of the fields to mask.
+     * @throws IOException If the json is not valid.
+     */
+    private static void maskJsonTokens(JsonParser parser, JsonGenerator generator, Set<String> fieldPaths)
+            throws IOException {
+        boolean hasPaths = false;
+        for (String fieldPath : fieldPaths) {
+            if (fieldPath != null && fieldPath.startsWith("/")) {
+                hasPaths = true;
+                break;
+            }
+        }
+
+        JsonToken token;
+        while ((token = parser.nextToken()) != null) {
+            if (token != JsonToken.FIELD_NAME) {
+                generator.copyCurrentEventExact(parser);
+                continue;
+            }
+            String name = parser.currentName();
+            generator.writeFieldName(name);
+            if (fieldPaths.contains(name) ||
+                    (hasPaths && fieldPaths.contains(parser.getParsingContext().pathAsPointer().toString()))) {
+                parser.nextToken();
+                parser.skipChildren();
+                generator.writeString(MASKED_FIELD);
+            }
+        }
+    }
+
+    /**
+     * Masks the values of the given fields of a json that is not valid as text, so truncated jsons or jsons with
+     * trailing text don't leak them. The fields are matched by the last part of their json pointers. Object and array
+     * values are masked up to their matching close, and unclosed values are masked until the end of the text.
+     * @param json The json to mask.
+     * @param fieldPaths The names or json pointers of the fields to mask.
+     * @return The masked json.
+     */
+    private static String maskInvalidJson(String json, Set<String> fieldPaths) {
+        String[] fields = fallbackFields(fieldPaths);
+        if (fields.length == 0)
+            return json;
+
+        Matcher matcher = Pattern.compile("\"(?:" + String.join("|", fields) + JSON_MASK_REGEX).matcher(json);
+        StringBuilder result = new StringBuilder(json.length());
+        int copied = 0;
+        while (copied < json.length() && matcher.find(copied)) {
+            int valueStart = matcher.start(1);
+            char first = json.charAt(valueStart);
+            result.append(json, copied, valueStart).append('"').append(MASKED_FIELD).append('"');
+            copied = first == '{' || first == '[' ? endOfNestedValue(json, valueStart) : matcher.end(1);
+        }
+        result.append(json, copied, json.length());
+        return maskField(result.toString(), fields);
+    }
+
+    /**
+     * Finds the end of the object or array that starts at the given index of a json, skipping the brackets inside its
+     * strings.
+     * @param json The json.
+     * @param start The index of the opening bracket.
+     * @return The index after the matching closing bracket, or the length of the json if it's not closed.
+     */
+    private static int endOfNestedValue(String json, int start) {
+        int depth = 0;
+        boolean inString = false;
+        for (int i = start; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (inString) {
+                if (c == '\\')
+                    i++;
+                else if (c == '"')
+                    inString = false;
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if ((c == '}' || c == ']') && --depth == 0) {
+                return i + 1;
+            }
+        }
+        return json.length();
+    }
+
+    /**
+     * Gets the field names to mask with {@link #maskField(String, String...)} when a json is not valid, taking the
+     * last part of the json pointers and escaping them for the regex.
+     * @param fieldPaths The names or json pointers of the fields to mask.
+     * @return The fields to mask.
+     */
+    private static String[] fallbackFields(Set<String> fieldPaths) {
+        return fieldPaths.stream()
+                .filter(fieldPath -> !isBlankOrNull(fieldPath))
+                .map(fieldPath -> fieldPath.substring(fieldPath.lastIndexOf('/') + 1))
+                .filter(field -> !field.isEmpty())
+                .map(Pattern::quote)
+                .toArray(String[]::new);
+    }
 }
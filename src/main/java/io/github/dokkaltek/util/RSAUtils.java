@@ -1,8 +1,13 @@
 package io.github.dokkaltek.util;
 
+import io.github.dokkaltek.constant.AESKeyBits;
 import io.github.dokkaltek.constant.RSAKeyBits;
+import io.github.dokkaltek.constant.RSASignatureAlgorithm;
 import io.github.dokkaltek.exception.CryptoException;
 import io.github.dokkaltek.exception.GenericException;
+import io.github.dokkaltek.exception.InvalidInputException;
+import io.github.dokkaltek.helper.CryptoPool;
+import io.github.dokkaltek.helper.SignedMessage;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 
@@ -10,26 +15,47 @@ import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.security.InvalidKeyException;
+import java.security.Key;
 import java.security.KeyFactory;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.security.GeneralSecurityException;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.interfaces.RSAKey;
 import java.security.spec.EncodedKeySpec;
 import java.security.spec.InvalidKeySpecException;
+import java.security.spec.MGF1ParameterSpec;
 import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.PSSParameterSpec;
 import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
 import java.util.Base64;
-import java.util.regex.Pattern;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
 
 import static io.github.dokkaltek.constant.ErrorStatus.INTERNAL_SERVER_ERROR;
-import static io.github.dokkaltek.constant.literal.SpecialChars.EMPTY_STRING;
 import static io.github.dokkaltek.util.StringUtils.isBlankOrNull;
 
 /**
@@ -38,11 +64,19 @@ import static io.github.dokkaltek.util.StringUtils.isBlankOrNull;
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public class RSAUtils {
     private static final String KEY_STRING_SEPARATOR = "-----";
-    private static final Pattern KEY_SEPARATOR_PATTERN =
-            Pattern.compile("(\\n)?" + KEY_STRING_SEPARATOR + ".+ .+ KEY" + KEY_STRING_SEPARATOR + "(\\n)?");
     private static final String ALGORITHM_NAME = "RSA";
     private static final String ALGORITHM_TYPE = "RSA/ECB/OAEPWithSHA-256AndMGF1Padding";
     private static final String ERROR_CODE = "RSA Exception";
+    private static final byte[] ENVELOPE_MAGIC = {'R', 'S', 'A', 'E'};
+    private static final byte ENVELOPE_VERSION = 1;
+    private static final int ENVELOPE_BUFFER_SIZE = 8192;
+    private static final RSASignatureAlgorithm DEFAULT_SIGNATURE_ALGORITHM = RSASignatureAlgorithm.PKCS1_SHA256;
+    private static final PSSParameterSpec PSS_PARAMETERS = new PSSParameterSpec("SHA-256", "MGF1",
+            MGF1ParameterSpec.SHA256, 32, 1);
+    private static final CryptoPool<Signature> SIGNATURE_POOL = new CryptoPool<>(RSAUtils::createSignature, 16);
+    private static final int MAX_CACHED_VERIFICATIONS = 4096;
+    private static final ConcurrentHashMap<String, Long> VERIFICATION_CACHE = new ConcurrentHashMap<>();
+    private static volatile long verificationCacheTtl = TimeUnit.MINUTES.toNanos(1);
 
     /**
      * Generates a new RSA key pair with the given number of bits.
@@ -241,6 +275,337 @@ public class RSAUtils {
         }
     }
 
+    /**
+     * Encrypts the remaining content of the input buffer into the output buffer using the given public key with the
+     * given algorithm, without copying the buffers to new arrays on the caller side. The input buffer is consumed and
+     * the position of the output buffer is moved past the written bytes.
+     * @param algorithm The algorithm used to encrypt the content.
+     * @param input The buffer with the content to encrypt.
+     * @param output The buffer to write the encrypted content to. It needs at least {@link #getRSAOutputSize(Key)}
+     *               bytes of room.
+     * @param publicKey The public key to use.
+     * @return The number of bytes written to the output buffer.
+     */
+    public static int encryptBufferToRSAWithAlgorithm(String algorithm, ByteBuffer input, ByteBuffer output,
+                                                      PublicKey publicKey) {
+        return cryptBuffer(Cipher.ENCRYPT_MODE, algorithm, input, output, publicKey);
+    }
+
+    /**
+     * Decrypts the remaining content of the input buffer into the output buffer using the given private key with the
+     * given algorithm. The input buffer is consumed and the position of the output buffer is moved past the written
+     * bytes.
+     * @param algorithm The algorithm used to decrypt the content.
+     * @param input The buffer with the content to decrypt.
+     * @param output The buffer to write the decrypted content to. It needs at least {@link #getRSAOutputSize(Key)}
+     *               bytes of room.
+     * @param privateKey The private key to use.
+     * @return The number of bytes written to the output buffer.
+     */
+    public static int decryptRSABufferWithAlgorithm(String algorithm, ByteBuffer input, ByteBuffer output,
+                                                    PrivateKey privateKey) {
+        return cryptBuffer(Cipher.DECRYPT_MODE, algorithm, input, output, privateKey);
+    }
+
+    /**
+     * Gets the maximum size of the output of encrypting or decrypting with the given RSA key, which is the size of
+     * its modulus, to allocate output buffers in advance.
+     * @param key The RSA key.
+     * @return The maximum size of the output, in bytes.
+     */
+    public static int getRSAOutputSize(Key key) {
+        if (!(key instanceof RSAKey))
+            throw new InvalidInputException("The given key is not an RSA key.");
+        return (((RSAKey) key).getModulus().bitLength() + 7) / 8;
+    }
+
+    /**
+     * Seals a payload of any size in an envelope that only the owner of the private key can open. A new AES-256 data
+     * key is generated for each envelope and wrapped with RSA-OAEP, and the payload is encrypted with it using
+     * AES-GCM, which is orders of magnitude faster than RSA. The envelope is made of:
+     * <ul>
+     *     <li>Magic <code>RSAE</code>, version, and length of the wrapped key (2 bytes).</li>
+     *     <li>The data key wrapped with the public key.</li>
+     *     <li>The payload encrypted like {@link AESUtils#encryptingStream(OutputStream, SecretKey)} does.</li>
+     * </ul>
+     * @param payload The payload to seal.
+     * @param publicKey The public key of the recipient.
+     * @return The sealed envelope.
+     */
+    public static byte[] sealEnvelope(byte[] payload, PublicKey publicKey) {
+        if (payload == null)
+            throw new NullPointerException("The given payload was null.");
+        ByteArrayOutputStream envelope = new ByteArrayOutputStream(payload.length + 512);
+        sealEnvelope(new ByteArrayInputStream(payload), envelope, publicKey);
+        return envelope.toByteArray();
+    }
+
+    /**
+     * Seals the content of a stream in an envelope, like {@link #sealEnvelope(byte[], PublicKey)}, writing it to the
+     * output stream as it's read, so payloads of any size use constant memory. The output stream is closed when done.
+     * @param payload The stream with the payload to seal.
+     * @param output The stream to write the envelope to.
+     * @param publicKey The public key of the recipient.
+     */
+    public static void sealEnvelope(InputStream payload, OutputStream output, PublicKey publicKey) {
+        if (payload == null || output == null || publicKey == null)
+            throw new NullPointerException("The given payload, output or public key was null.");
+        SecretKey dataKey = AESUtils.generateAESKey(AESKeyBits.KEY_256);
+        try {
+            Cipher wrapCipher = Cipher.getInstance(ALGORITHM_TYPE);
+            wrapCipher.init(Cipher.WRAP_MODE, publicKey);
+            byte[] wrappedKey = wrapCipher.wrap(dataKey);
+
+            DataOutputStream header = new DataOutputStream(output);
+            header.write(ENVELOPE_MAGIC);
+            header.writeByte(ENVELOPE_VERSION);
+            header.writeShort(wrappedKey.length);
+            header.write(wrappedKey);
+
+            try (OutputStream body = AESUtils.encryptingStream(output, dataKey)) {
+                byte[] buffer = new byte[ENVELOPE_BUFFER_SIZE];
+                int read;
+                while ((read = payload.read(buffer)) != -1)
+                    body.write(buffer, 0, read);
+            }
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException(ERROR_CODE, e);
+        } catch (IOException e) {
+            throw new GenericException("Error sealing envelope", e, INTERNAL_SERVER_ERROR.code());
+        }
+    }
+
+    /**
+     * Opens an envelope sealed with {@link #sealEnvelope(byte[], PublicKey)}.
+     * @param envelope The sealed envelope.
+     * @param privateKey The private key of the recipient.
+     * @return The payload of the envelope.
+     */
+    public static byte[] openEnvelope(byte[] envelope, PrivateKey privateKey) {
+        if (envelope == null)
+            throw new NullPointerException("The given envelope was null.");
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(envelope.length);
+        try (InputStream body = openEnvelope(new ByteArrayInputStream(envelope), privateKey)) {
+            byte[] buffer = new byte[ENVELOPE_BUFFER_SIZE];
+            int read;
+            while ((read = body.read(buffer)) != -1)
+                payload.write(buffer, 0, read);
+        } catch (IOException e) {
+            throw new GenericException("Error opening envelope", e, INTERNAL_SERVER_ERROR.code());
+        }
+        return payload.toByteArray();
+    }
+
+    /**
+     * Opens an envelope sealed with {@link #sealEnvelope(InputStream, OutputStream, PublicKey)}, unwrapping its data
+     * key and returning a stream that decrypts and authenticates the payload as it's read.
+     * @param envelope The stream with the sealed envelope.
+     * @param privateKey The private key of the recipient.
+     * @return The stream with the payload of the envelope.
+     */
+    public static InputStream openEnvelope(InputStream envelope, PrivateKey privateKey) {
+        if (envelope == null || privateKey == null)
+            throw new NullPointerException("The given envelope or private key was null.");
+        try {
+            DataInputStream header = new DataInputStream(envelope);
+            byte[] magic = new byte[ENVELOPE_MAGIC.length];
+            header.readFully(magic);
+            if (!Arrays.equals(ENVELOPE_MAGIC, magic) || header.readByte() != ENVELOPE_VERSION)
+                throw new CryptoException("The given data is not a sealed envelope.");
+            byte[] wrappedKey = new byte[header.readUnsignedShort()];
+            header.readFully(wrappedKey);
+
+            Cipher unwrapCipher = Cipher.getInstance(ALGORITHM_TYPE);
+            unwrapCipher.init(Cipher.UNWRAP_MODE, privateKey);
+            SecretKey dataKey = (SecretKey) unwrapCipher.unwrap(wrappedKey, "AES", Cipher.SECRET_KEY);
+            return AESUtils.decryptingStream(envelope, dataKey);
+        } catch (EOFException e) {
+            throw new CryptoException("The given envelope is truncated.");
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException(ERROR_CODE, e);
+        } catch (IOException e) {
+            throw new GenericException("Error opening envelope", e, INTERNAL_SERVER_ERROR.code());
+        }
+    }
+
+    /**
+     * Signs a message with RSASSA-PKCS1-v1_5 using SHA-256, which all Java 8 runtimes support. RSASSA-PSS can be used
+     * with {@link #sign(RSASignatureAlgorithm, byte[], PrivateKey)} on runtimes that support it.
+     * @param message The message to sign.
+     * @param privateKey The private key to sign with.
+     * @return The signature.
+     */
+    public static byte[] sign(byte[] message, PrivateKey privateKey) {
+        return sign(DEFAULT_SIGNATURE_ALGORITHM, message, privateKey);
+    }
+
+    /**
+     * Signs a message with the given algorithm, using a {@link Signature} pooled per thread.
+     * @param algorithm The signature algorithm.
+     * @param message The message to sign.
+     * @param privateKey The private key to sign with.
+     * @return The signature.
+     */
+    public static byte[] sign(RSASignatureAlgorithm algorithm, byte[] message, PrivateKey privateKey) {
+        if (algorithm == null || message == null || privateKey == null)
+            throw new NullPointerException("The given algorithm, message or private key was null.");
+        try {
+            Signature signer = SIGNATURE_POOL.get(algorithm.algorithm());
+            signer.initSign(privateKey);
+            signer.update(message);
+            return signer.sign();
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException(ERROR_CODE, e);
+        }
+    }
+
+    /**
+     * Verifies a signature made with {@link #sign(byte[], PrivateKey)}.
+     * @param message The message that was signed.
+     * @param signature The signature to verify.
+     * @param publicKey The public key to verify with.
+     * @return True if the signature is valid, false otherwise.
+     */
+    public static boolean verify(byte[] message, byte[] signature, PublicKey publicKey) {
+        return verify(DEFAULT_SIGNATURE_ALGORITHM, message, signature, publicKey);
+    }
+
+    /**
+     * Verifies a signature with the given algorithm, using a {@link Signature} pooled per thread. Malformed
+     * signatures are reported as invalid.
+     * @param algorithm The signature algorithm.
+     * @param message The message that was signed.
+     * @param signature The signature to verify.
+     * @param publicKey The public key to verify with.
+     * @return True if the signature is valid, false otherwise.
+     */
+    public static boolean verify(RSASignatureAlgorithm algorithm, byte[] message, byte[] signature,
+                                 PublicKey publicKey) {
+        if (algorithm == null || message == null || signature == null || publicKey == null)
+            throw new NullPointerException("The given algorithm, message, signature or public key was null.");
+        try {
+            Signature verifier = SIGNATURE_POOL.get(algorithm.algorithm());
+            verifier.initVerify(publicKey);
+            verifier.update(message);
+            return verifier.verify(signature);
+        } catch (SignatureException e) {
+            return false;
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException(ERROR_CODE, e);
+        }
+    }
+
+    /**
+     * Verifies many signatures made with {@link #sign(byte[], PrivateKey)} in parallel.
+     * @param messages The signed messages.
+     * @param publicKey The public key to verify with.
+     * @return Whether each signature is valid, in the same order as the messages.
+     * @see #verifyAll(RSASignatureAlgorithm, List, PublicKey)
+     */
+    public static boolean[] verifyAll(List<SignedMessage> messages, PublicKey publicKey) {
+        return verifyAll(DEFAULT_SIGNATURE_ALGORITHM, messages, publicKey);
+    }
+
+    /**
+     * Verifies many signatures with the given algorithm in parallel, spreading them across the common fork-join pool.
+     * Valid signatures are cached for a while, keyed by a SHA-256 hash of the algorithm, key, message and signature,
+     * so tokens that are verified over and over only pay for a hash. Only valid signatures are cached, so invalid
+     * ones can't fill the cache. The cache holds up to 4096 results for 1 minute by default, and it's cleared when
+     * full.
+     * @param algorithm The signature algorithm.
+     * @param messages The signed messages.
+     * @param publicKey The public key to verify with.
+     * @return Whether each signature is valid, in the same order as the messages.
+     * @see #setVerificationCacheTtl(long, TimeUnit)
+     */
+    public static boolean[] verifyAll(RSASignatureAlgorithm algorithm, List<SignedMessage> messages,
+                                      PublicKey publicKey) {
+        if (algorithm == null || messages == null || publicKey == null)
+            throw new NullPointerException("The given algorithm, messages or public key was null.");
+        boolean[] results = new boolean[messages.size()];
+        long ttl = verificationCacheTtl;
+        if (ttl <= 0) {
+            IntStream.range(0, results.length).parallel().forEach(i -> results[i] =
+                    verify(algorithm, messages.get(i).message(), messages.get(i).signature(), publicKey));
+            return results;
+        }
+
+        byte[] keyDigest = sha256(algorithm.algorithm().getBytes(StandardCharsets.UTF_8), publicKey.getEncoded());
+        IntStream.range(0, results.length).parallel().forEach(i -> {
+            SignedMessage message = messages.get(i);
+            String cacheKey = Base64.getEncoder().encodeToString(
+                    sha256(keyDigest, ByteBuffer.allocate(4).putInt(message.message().length).array(),
+                            message.message(), message.signature()));
+            long now = System.nanoTime();
+            Long expiration = VERIFICATION_CACHE.get(cacheKey);
+            if (expiration != null && expiration - now > 0) {
+                results[i] = true;
+                return;
+            }
+
+            results[i] = verify(algorithm, message.message(), message.signature(), publicKey);
+            if (results[i]) {
+                if (VERIFICATION_CACHE.size() >= MAX_CACHED_VERIFICATIONS)
+                    VERIFICATION_CACHE.clear();
+                VERIFICATION_CACHE.put(cacheKey, now + ttl);
+            }
+        });
+        return results;
+    }
+
+    /**
+     * Sets for how long the valid signatures are cached by {@link #verifyAll(RSASignatureAlgorithm, List, PublicKey)},
+     * clearing the cache.
+     * @param ttl The time to cache the results, or 0 to disable the cache.
+     * @param unit The unit of the time.
+     */
+    public static void setVerificationCacheTtl(long ttl, TimeUnit unit) {
+        if (ttl < 0 || unit == null)
+            throw new InvalidInputException("The time to cache verifications must not be negative.");
+        verificationCacheTtl = unit.toNanos(ttl);
+        VERIFICATION_CACHE.clear();
+    }
+
+    /**
+     * Removes all the cached signature verifications.
+     */
+    public static void clearVerificationCache() {
+        VERIFICATION_CACHE.clear();
+    }
+
+    /**
+     * Gets the pool of signatures used to sign and verify, to check its hit rate or clear it.
+     * @return The signature pool.
+     */
+    public static CryptoPool<Signature> getSignaturePool() {
+        return SIGNATURE_POOL;
+    }
+
+    /**
+     * Encrypts or decrypts the remaining content of a buffer into another one.
+     * @param mode The cipher mode.
+     * @param algorithm The algorithm to use.
+     * @param input The buffer to read.
+     * @param output The buffer to write.
+     * @param key The key to use.
+     * @return The number of bytes written.
+     */
+    private static int cryptBuffer(int mode, String algorithm, ByteBuffer input, ByteBuffer output, Key key) {
+        if (algorithm == null || input == null || output == null)
+            throw new InvalidInputException("The algorithm, input and output buffers must not be null.");
+        try {
+            Cipher cipher = Cipher.getInstance(algorithm);
+            cipher.init(mode, key);
+            if (cipher.getOutputSize(input.remaining()) > output.remaining())
+                throw new InvalidInputException("The output buffer doesn't have enough room, it needs " +
+                        cipher.getOutputSize(input.remaining()) + " bytes.");
+            return cipher.doFinal(input, output);
+        } catch (NoSuchPaddingException | NoSuchAlgorithmException | InvalidKeyException | ShortBufferException |
+                 IllegalBlockSizeException | BadPaddingException ex) {
+            throw new CryptoException(ERROR_CODE, ex);
+        }
+    }
+
     /**
      * Reads a key from a file.
      * @param file The file to read the key from.
@@ -251,12 +616,84 @@ public class RSAUtils {
             throw new NullPointerException("The given file was null.");
 
         try {
-            byte[] keyBytes = Files.readAllBytes(file.toPath());
-            String privateKey = new String(keyBytes);
-            privateKey = KEY_SEPARATOR_PATTERN.matcher(privateKey).replaceAll(EMPTY_STRING);
-            return Base64.getDecoder().decode(privateKey);
+            return decodePem(Files.readAllBytes(file.toPath()));
         } catch (IOException e) {
             throw new GenericException("Error reading key from file", e, INTERNAL_SERVER_ERROR.code());
         }
     }
+
+    /**
+     * Decodes the content of a PEM file in a single pass, skipping the <code>-----BEGIN ...-----</code> and
+     * <code>-----END ...-----</code> lines and any whitespace, so keys wrapped at any line length are supported.
+     * Content without armor is decoded as plain base64.
+     * @param content The content of the file.
+     * @return The decoded key bytes.
+     */
+    private static byte[] decodePem(byte[] content) {
+        byte[] base64 = new byte[content.length];
+        int length = 0;
+        int i = 0;
+        while (i < content.length) {
+            if (content[i] == '-' && startsWithSeparator(content, i)) {
+                int end = i + KEY_STRING_SEPARATOR.length();
+                while (end < content.length && !startsWithSeparator(content, end))
+                    end++;
+                if (end == content.length)
+                    throw new CryptoException("The key file has an unterminated PEM armor line.");
+                i = end + KEY_STRING_SEPARATOR.length();
+            } else {
+                byte current = content[i++];
+                if (current > ' ')
+                    base64[length++] = current;
+            }
+        }
+        return Base64.getDecoder().decode(Arrays.copyOf(base64, length));
+    }
+
+    /**
+     * Checks if the PEM armor separator starts at the given position.
+     * @param content The content to check.
+     * @param position The position to check.
+     * @return True if the separator starts at the position, false otherwise.
+     */
+    private static boolean startsWithSeparator(byte[] content, int position) {
+        if (position + KEY_STRING_SEPARATOR.length() > content.length)
+            return false;
+        for (int i = 0; i < KEY_STRING_SEPARATOR.length(); i++) {
+            if (content[position + i] != KEY_STRING_SEPARATOR.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Creates the signatures of the pool, setting the parameters of RSASSA-PSS.
+     * @param algorithm The algorithm of the signature.
+     * @param provider The provider of the signature, or null to use the default one.
+     * @return The new signature.
+     * @throws GeneralSecurityException If the signature can't be created.
+     */
+    private static Signature createSignature(String algorithm, String provider) throws GeneralSecurityException {
+        Signature signature = provider == null ? Signature.getInstance(algorithm) :
+                Signature.getInstance(algorithm, provider);
+        if (RSASignatureAlgorithm.PSS_SHA256.algorithm().equals(algorithm))
+            signature.setParameter(PSS_PARAMETERS);
+        return signature;
+    }
+
+    /**
+     * Hashes the given parts with SHA-256.
+     * @param parts The parts to hash.
+     * @return The hash.
+     */
+    private static byte[] sha256(byte[]... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (byte[] part : parts)
+                digest.update(part);
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new CryptoException(ERROR_CODE, e);
+        }
+    }
 }
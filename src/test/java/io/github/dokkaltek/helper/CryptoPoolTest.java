@@ -0,0 +1,61 @@
+package io.github.dokkaltek.helper;
+
+import io.github.dokkaltek.exception.InvalidInputException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Cipher;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests the CryptoPool class.
+ */
+class CryptoPoolTest {
+
+    /**
+     * Tests reusing and renewing the pooled instances.
+     */
+    @Test
+    @DisplayName("Tests the CryptoPool class methods")
+    void testCryptoPool() throws Exception {
+        CryptoPool<Cipher> pool = new CryptoPool<>((algorithm, provider) -> provider == null ?
+                Cipher.getInstance(algorithm) : Cipher.getInstance(algorithm, provider), 2);
+        Cipher cipher = pool.get("AES/GCM/NoPadding");
+        assertSame(cipher, pool.get("AES/GCM/NoPadding"));
+        assertNotSame(cipher, pool.get("AES/GCM/NoPadding", "SunJCE"));
+        assertEquals(1, pool.getHits());
+        assertEquals(2, pool.getMisses());
+        assertEquals(1 / 3d, pool.getHitRate(), 0.0001);
+
+        // Other threads get their own instances
+        assertNotSame(cipher, CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.get("AES/GCM/NoPadding");
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }).join());
+
+        // Full pools don't keep more instances
+        Cipher cbc = pool.get("AES/CBC/PKCS5PADDING");
+        assertNotSame(cbc, pool.get("AES/CBC/PKCS5PADDING"));
+
+        Cipher renewed = pool.renew("AES/GCM/NoPadding", null);
+        assertNotSame(cipher, renewed);
+        assertSame(renewed, pool.get("AES/GCM/NoPadding"));
+
+        pool.clear();
+        assertNotSame(renewed, pool.get("AES/GCM/NoPadding"));
+        pool.resetStatistics();
+        assertEquals(0, pool.getHitRate());
+        assertThrows(NoSuchAlgorithmException.class, () -> pool.get("Unknown"));
+        assertThrows(InvalidInputException.class, () -> new CryptoPool<Cipher>(null, 1));
+    }
+}
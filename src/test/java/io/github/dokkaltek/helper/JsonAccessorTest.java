@@ -0,0 +1,61 @@
+package io.github.dokkaltek.helper;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.github.dokkaltek.exception.InvalidInputException;
+import io.github.dokkaltek.util.JsonUtils;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the JsonAccessor class.
+ */
+class JsonAccessorTest {
+    private static final JsonNode SAMPLE_NODE = JsonUtils.readJSON("{\"a\":{\"b\":[{\"c\":42,\"d\":null}," +
+            "{\"c\":\"7\",\"big\":12345678901,\"ratio\":0.5,\"on\":true}]},\"x/y\":{\"~z\":\"escaped\"},\"0\":\"zero\"}");
+
+    /**
+     * Tests resolving compiled paths.
+     */
+    @Test
+    @DisplayName("Tests resolving nested paths")
+    void testResolve() {
+        assertEquals(42, JsonAccessor.compile("/a/b/0/c").getInt(SAMPLE_NODE, -1));
+        assertEquals(7, JsonAccessor.compile("/a/b/1/c").getInt(SAMPLE_NODE, -1));
+        assertEquals("7", JsonAccessor.compile("/a/b/1/c").getString(SAMPLE_NODE, null));
+        assertEquals(12345678901L, JsonAccessor.compile("/a/b/1/big").getLong(SAMPLE_NODE, -1));
+        assertEquals(0.5, JsonAccessor.compile("/a/b/1/ratio").getDouble(SAMPLE_NODE, -1));
+        assertTrue(JsonAccessor.compile("/a/b/1/on").getBoolean(SAMPLE_NODE, false));
+        assertEquals("escaped", JsonAccessor.compile("/x~1y/~0z").getString(SAMPLE_NODE, null));
+        assertEquals("zero", JsonAccessor.compile("/0").getString(SAMPLE_NODE, null));
+        assertSame(SAMPLE_NODE, JsonAccessor.compile("").resolve(SAMPLE_NODE));
+
+        // Missing paths and nulls return the default value
+        assertEquals(-1, JsonAccessor.compile("/a/b/0/d").getInt(SAMPLE_NODE, -1));
+        assertTrue(JsonAccessor.compile("/a/b/0/d").exists(SAMPLE_NODE));
+        assertEquals(-1, JsonAccessor.compile("/a/b/5/c").getInt(SAMPLE_NODE, -1));
+        assertEquals(-1, JsonAccessor.compile("/a/b/first/c").getInt(SAMPLE_NODE, -1));
+        assertEquals("none", JsonAccessor.compile("/a/missing").getString(SAMPLE_NODE, "none"));
+        assertFalse(JsonAccessor.compile("/a/b/0/c/deeper").exists(SAMPLE_NODE));
+        assertNull(JsonAccessor.compile("/a").resolve(null));
+    }
+
+    /**
+     * Tests compiling paths.
+     */
+    @Test
+    @DisplayName("Tests compiling paths")
+    void testCompile() {
+        assertSame(JsonAccessor.compile("/a/b"), JsonAccessor.compile("/a/b"));
+        assertEquals("/a/b", JsonAccessor.compile("/a/b").getPath());
+        assertThrows(InvalidInputException.class, () -> JsonAccessor.compile(null));
+        assertThrows(InvalidInputException.class, () -> JsonAccessor.compile("a/b"));
+        assertThrows(InvalidInputException.class, () -> JsonAccessor.compile("/a~2"));
+    }
+}
@@ -0,0 +1,100 @@
+package io.github.dokkaltek.helper;
+
+import io.github.dokkaltek.constant.RSAKeyBits;
+import io.github.dokkaltek.exception.GenericException;
+import io.github.dokkaltek.exception.InvalidInputException;
+import io.github.dokkaltek.util.RSAUtils;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests the KeyStoreCache class.
+ */
+class KeyStoreCacheTest {
+
+    /**
+     * Tests caching keys and reading them again when their files change.
+     */
+    @Test
+    @DisplayName("Tests caching keys by file modification")
+    void testKeyStoreCache() throws IOException {
+        File directory = Files.createTempDirectory("key-store-cache").toFile();
+        File publicFile = new File(directory, "public.pem");
+        File privateFile = new File(directory, "private.pem");
+        publicFile.deleteOnExit();
+        privateFile.deleteOnExit();
+        directory.deleteOnExit();
+
+        KeyPair keyPair = RSAUtils.generateRSAKeyPair(RSAKeyBits.KEY_2048);
+        RSAUtils.writePublicKeyToFile(keyPair.getPublic(), publicFile);
+        RSAUtils.writePrivateKeyToFile(keyPair.getPrivate(), privateFile);
+
+        try (KeyStoreCache cache = new KeyStoreCache()) {
+            PublicKey publicKey = cache.getPublicKey(publicFile);
+            assertEquals(keyPair.getPublic(), publicKey);
+            assertSame(publicKey, cache.getPublicKey(publicFile));
+            assertEquals(keyPair.getPrivate(), cache.getPrivateKey(privateFile));
+            assertEquals(2, cache.size());
+
+            // Rotated keys are read again
+            KeyPair rotated = RSAUtils.generateRSAKeyPair(RSAKeyBits.KEY_2048);
+            RSAUtils.writePublicKeyToFile(rotated.getPublic(), publicFile);
+            publicFile.setLastModified(publicFile.lastModified() + 2000);
+            assertEquals(rotated.getPublic(), cache.getPublicKey(publicFile));
+
+            cache.invalidate(publicFile);
+            assertEquals(1, cache.size());
+            cache.clear();
+            assertEquals(0, cache.size());
+            assertThrows(GenericException.class, () -> cache.getPublicKey(new File(directory, "missing.pem")));
+            assertThrows(InvalidInputException.class, () -> cache.watch(publicFile));
+        }
+    }
+
+    /**
+     * Tests dropping the keys of a watched directory when its files change.
+     */
+    @Test
+    @DisplayName("Tests watching a key directory")
+    void testWatchKeyDirectory() throws Exception {
+        File directory = Files.createTempDirectory("key-store-watch").toFile();
+        File publicFile = new File(directory, "public.pem");
+        publicFile.deleteOnExit();
+        directory.deleteOnExit();
+        KeyPair keyPair = RSAUtils.generateRSAKeyPair(RSAKeyBits.KEY_2048);
+        RSAUtils.writePublicKeyToFile(keyPair.getPublic(), publicFile);
+
+        try (KeyStoreCache cache = new KeyStoreCache()) {
+            cache.watch(directory);
+            PublicKey publicKey = cache.getPublicKey(publicFile);
+            assertSame(publicKey, cache.getPublicKey(publicFile));
+
+            // Keys wrapped at 64 characters, like most tools write them, are supported too
+            KeyPair rotated = RSAUtils.generateRSAKeyPair(RSAKeyBits.KEY_2048);
+            String pem = "-----BEGIN PUBLIC KEY-----\n" +
+                    Base64.getMimeEncoder(64, "\n".getBytes(StandardCharsets.UTF_8))
+                            .encodeToString(rotated.getPublic().getEncoded()) +
+                    "\n-----END PUBLIC KEY-----\n";
+            Files.write(publicFile.toPath(), pem.getBytes(StandardCharsets.UTF_8));
+
+            long deadline = System.currentTimeMillis() + 20_000;
+            while (cache.size() > 0 && System.currentTimeMillis() < deadline)
+                Thread.sleep(50);
+            assertNotSame(publicKey, cache.getPublicKey(publicFile));
+            assertEquals(rotated.getPublic(), cache.getPublicKey(publicFile));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package io.github.dokkaltek.helper;
+
+import io.github.dokkaltek.util.LoggingUtils;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static io.github.dokkaltek.constant.literal.SpecialChars.EMPTY_STRING;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the LogMasker class.
+ */
+class LogMaskerTest {
+
+    /**
+     * Tests masking messages with a reused masker.
+     */
+    @Test
+    @DisplayName("Tests masking messages with a reusable masker")
+    void testLogMasker() {
+        LogMasker masker = LogMasker.of("name", "password");
+        assertFalse(masker.isEmpty());
+        for (int i = 0; i < 3; i++) {
+            String message = "name=guybrush" + i + ", password =test";
+            assertEquals("name=*****, password =*****", masker.mask(message));
+            assertEquals(LoggingUtils.maskField(message, "name", "password"), masker.mask(message));
+        }
+        assertEquals("name: ****rush", masker.maskRange("name: guybrush", 0, 4));
+        assertEquals("name: ********@threepwood.com", masker.maskUntilChar("name: guybrush@threepwood.com", '@'));
+        assertEquals("name: ********@******wood.com",
+                masker.maskUntilCharWithRange("name: guybrush@threepwood.com", '@', 0, 6));
+        assertEquals(EMPTY_STRING, masker.mask(null));
+
+        // Values can end with a comma if another separator is used
+        assertEquals("tags=*****; other=value",
+                new LogMasker(";", "tags").mask("tags=a,b,; other=value"));
+        assertEquals("tags=a,b,; other=value", LogMasker.of("tags").maskRange("tags=a,b,; other=value", 5, 1));
+
+        LogMasker empty = LogMasker.of((String) null);
+        assertTrue(empty.isEmpty());
+        assertEquals("name=guybrush", empty.mask("name=guybrush"));
+    }
+
+    /**
+     * Tests masking many fields and fields with groups of their own.
+     */
+    @Test
+    @DisplayName("Tests masking many fields in a single pass")
+    void testLogMaskerManyFields() {
+        StringBuilder message = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            message.append("email").append(i).append("=user").append(i).append("@mail.com, ");
+            expected.append("email").append(i).append("=").append(i < 10 ? "*****" : "******")
+                    .append("@mail.com, ");
+        }
+        assertEquals(expected.toString(), LogMasker.of("email\\d+").maskUntilChar(message.toString(), '@'));
+
+        // Fields with groups don't shift the value
+        assertEquals("password=***ret, pass=***ret",
+                LogMasker.of("pass(word)?").maskRange("password=secret, pass=secret", 0, 3));
+        String unmasked = "nothing to mask here";
+        assertSame(unmasked, LogMasker.of("password").mask(unmasked));
+    }
+}
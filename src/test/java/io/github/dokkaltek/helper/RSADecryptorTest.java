@@ -0,0 +1,107 @@
+package io.github.dokkaltek.helper;
+
+import io.github.dokkaltek.constant.RSAKeyBits;
+import io.github.dokkaltek.exception.CryptoException;
+import io.github.dokkaltek.exception.InvalidInputException;
+import io.github.dokkaltek.util.RSAUtils;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.spec.RSAPrivateKeySpec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests the RSADecryptor class.
+ */
+class RSADecryptorTest {
+
+    /**
+     * Tests decrypting messages concurrently and rejecting them when the queue is full.
+     */
+    @Test
+    @DisplayName("Tests decrypting RSA messages on a worker pool")
+    void testRSADecryptor() throws Exception {
+        KeyPair keyPair = RSAUtils.generateRSAKeyPair(RSAKeyBits.KEY_2048);
+        List<byte[]> messages = new ArrayList<>();
+        List<CompletableFuture<byte[]>> results = new ArrayList<>();
+
+        try (RSADecryptor decryptor = new RSADecryptor(keyPair.getPrivate(), 2, 16)) {
+            for (int i = 0; i < 16; i++) {
+                byte[] message = ("message " + i).getBytes(StandardCharsets.UTF_8);
+                messages.add(message);
+                results.add(decryptor.submit(RSAUtils.encryptBytesToRSA(message, keyPair.getPublic()), 5,
+                        TimeUnit.SECONDS));
+            }
+            for (int i = 0; i < messages.size(); i++)
+                assertArrayEquals(messages.get(i), results.get(i).get(5, TimeUnit.SECONDS));
+
+            ExecutionException invalid = assertThrows(ExecutionException.class,
+                    () -> decryptor.submit(new byte[256]).get(5, TimeUnit.SECONDS));
+            assertInstanceOf(CryptoException.class, invalid.getCause());
+        }
+
+        // Block the only worker to fill the queue
+        CountDownLatch release = new CountDownLatch(1);
+        try (RSADecryptor decryptor = new RSADecryptor(keyPair.getPrivate(), "RSA/ECB/OAEPWithSHA-256AndMGF1Padding",
+                1, 1, runnable -> new Thread(() -> {
+                    awaitQuietly(release);
+                    runnable.run();
+                }))) {
+            byte[] encrypted = RSAUtils.encryptBytesToRSA(messages.get(0), keyPair.getPublic());
+            CompletableFuture<byte[]> first = decryptor.submit(encrypted);
+            CompletableFuture<byte[]> second = decryptor.submit(encrypted);
+            ExecutionException rejected = assertThrows(ExecutionException.class,
+                    () -> decryptor.submit(encrypted).get());
+            assertInstanceOf(RejectedExecutionException.class, rejected.getCause());
+
+            release.countDown();
+            assertArrayEquals(messages.get(0), first.get(5, TimeUnit.SECONDS));
+            assertArrayEquals(messages.get(0), second.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * Tests {@link RSADecryptor#requireCrtKey(PrivateKey)}.
+     */
+    @Test
+    @DisplayName("Tests rejecting private keys not in CRT form")
+    void testRequireCrtKey() throws Exception {
+        KeyPair keyPair = RSAUtils.generateRSAKeyPair(RSAKeyBits.KEY_2048);
+        RSADecryptor.requireCrtKey(keyPair.getPrivate());
+
+        RSAPrivateKey crtKey = (RSAPrivateKey) keyPair.getPrivate();
+        PrivateKey plainKey = KeyFactory.getInstance("RSA").generatePrivate(
+                new RSAPrivateKeySpec(crtKey.getModulus(), crtKey.getPrivateExponent()));
+        assertThrows(InvalidInputException.class, () -> RSADecryptor.requireCrtKey(plainKey));
+        assertThrows(InvalidInputException.class, () -> new RSADecryptor(plainKey, 1, 1));
+        assertThrows(InvalidInputException.class, () -> new RSADecryptor(keyPair.getPrivate(), 0, 1));
+        assertThrows(InvalidInputException.class, () -> RSADecryptor.requireCrtKey(null));
+    }
+
+    /**
+     * Waits for a latch, ignoring interruptions.
+     * @param latch The latch to wait for.
+     */
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package io.github.dokkaltek.helper;
+
+import io.github.dokkaltek.util.LoggingUtils;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests the SanitizingWriter and SanitizingOutputStream classes.
+ */
+class SanitizingWriterTest {
+    private static final List<String> FIELDS = Arrays.asList("password", "token");
+    private static final String[] MESSAGES = {
+            "name=guybrush, password = test",
+            "password=secret,, token: abc\n\tnext line",
+            "password= , token=a,b, password:",
+            "passwordpassword=x token token=y",
+            "nothing to mask é€😀 \"quoted\" \\ end",
+            "password"
+    };
+
+    /**
+     * Tests that writing in chunks of any size gives the same result as masking and encoding the whole message.
+     */
+    @Test
+    @DisplayName("Tests masking and encoding for logs in one streaming pass")
+    void testSanitizingWriter() throws IOException {
+        for (String message : MESSAGES) {
+            String expected = LoggingUtils.encodeForLog(LoggingUtils.maskField(message, "password", "token"));
+            for (int chunkSize = 1; chunkSize <= message.length(); chunkSize++) {
+                StringWriter output = new StringWriter();
+                try (Writer writer = new SanitizingWriter(output, FIELDS)) {
+                    for (int i = 0; i < message.length(); i += chunkSize)
+                        writer.write(message, i, Math.min(chunkSize, message.length() - i));
+                }
+                assertEquals(expected, output.toString(), message + " in chunks of " + chunkSize);
+            }
+        }
+
+        StringWriter output = new StringWriter();
+        try (Writer writer = new SanitizingWriter(output, FIELDS, ';')) {
+            writer.write("token=a;b;; other=1");
+        }
+        assertEquals("token=*****;; other=1", output.toString());
+        assertThrows(IOException.class, () -> {
+            Writer writer = new SanitizingWriter(new StringWriter(), FIELDS);
+            writer.close();
+            writer.write("x");
+        });
+    }
+
+    /**
+     * Tests that bytes split in the middle of a char are decoded correctly.
+     */
+    @Test
+    @DisplayName("Tests masking and encoding UTF-8 bytes for logs")
+    void testSanitizingOutputStream() throws IOException {
+        for (String message : MESSAGES) {
+            String expected = LoggingUtils.encodeForLog(LoggingUtils.maskField(message, "password", "token"));
+            byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            try (OutputStream stream = new SanitizingOutputStream(output, FIELDS)) {
+                for (byte b : bytes)
+                    stream.write(b);
+            }
+            assertEquals(expected, new String(output.toByteArray(), StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package io.github.dokkaltek.util;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import io.github.dokkaltek.constant.AESKeyBits;
 import io.github.dokkaltek.exception.CryptoException;
+import io.github.dokkaltek.exception.GenericException;
+import io.github.dokkaltek.exception.InvalidInputException;
+import io.github.dokkaltek.helper.Duo;
 import io.github.dokkaltek.samples.SamplePojo;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -13,11 +17,30 @@ import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.security.NoSuchAlgorithmException;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 
 import static io.github.dokkaltek.util.AESUtils.decryptAESFileWithCBC;
 import static io.github.dokkaltek.util.AESUtils.decryptAESFileWithGCM;
@@ -31,12 +54,18 @@ import static io.github.dokkaltek.util.AESUtils.encryptToAESWithCBC;
 import static io.github.dokkaltek.util.AESUtils.encryptToAESWithGCM;
 import static io.github.dokkaltek.util.AESUtils.generateAESKey;
 import static io.github.dokkaltek.util.AESUtils.generateAESKeyFromPassword;
+import static io.github.dokkaltek.util.AESUtils.generateCounterIvForGCM;
 import static io.github.dokkaltek.util.AESUtils.generateIv;
 import static io.github.dokkaltek.util.AESUtils.generateIvForGCM;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mockStatic;
 
@@ -76,6 +105,42 @@ class AESUtilsTest {
         }
     }
 
+    /**
+     * Tests {@link AESUtils#getCachedAESKeyFromPassword(AESKeyBits, String, String, int)},
+     * {@link AESUtils#invalidateCachedAESKey(AESKeyBits, String, String, int)} and
+     * {@link AESUtils#generateAESKeysFromPasswords(AESKeyBits, List, int)} methods.
+     */
+    @Test
+    @DisplayName("Test generating cached and parallel AES keys from passwords")
+    void testGenerateCachedAESKeyFromPassword() {
+        SecretKey key = AESUtils.getCachedAESKeyFromPassword(AESKeyBits.KEY_256, "password", "salt", 1000);
+        assertArrayEquals(generateAESKeyFromPassword(AESKeyBits.KEY_256, "password", "salt", 1000).getEncoded(),
+                key.getEncoded());
+        assertSame(key, AESUtils.getCachedAESKeyFromPassword(AESKeyBits.KEY_256, "password", "salt", 1000));
+        assertNotSame(key, AESUtils.getCachedAESKeyFromPassword(AESKeyBits.KEY_256, "password", "salt", 1001));
+        assertFalse(Arrays.equals(key.getEncoded(),
+                generateAESKeyFromPassword(AESKeyBits.KEY_256, "password", "salt", 1001).getEncoded()));
+
+        assertTrue(AESUtils.invalidateCachedAESKey(AESKeyBits.KEY_256, "password", "salt", 1000));
+        assertFalse(AESUtils.invalidateCachedAESKey(AESKeyBits.KEY_256, "password", "salt", 1000));
+        assertNotSame(key, AESUtils.getCachedAESKeyFromPassword(AESKeyBits.KEY_256, "password", "salt", 1000));
+        AESUtils.clearAESKeyCache();
+        assertFalse(AESUtils.invalidateCachedAESKey(AESKeyBits.KEY_256, "password", "salt", 1000));
+
+        List<Duo<String, String>> passwords = new ArrayList<>();
+        for (int i = 0; i < 6; i++)
+            passwords.add(Duo.of("password" + i, "salt" + i));
+        List<SecretKey> keys = AESUtils.generateAESKeysFromPasswords(AESKeyBits.KEY_128, passwords, 1000);
+        assertEquals(passwords.size(), keys.size());
+        for (int i = 0; i < passwords.size(); i++)
+            assertArrayEquals(generateAESKeyFromPassword(AESKeyBits.KEY_128, "password" + i, "salt" + i, 1000)
+                    .getEncoded(), keys.get(i).getEncoded());
+
+        assertThrows(InvalidInputException.class, () -> generateAESKeyFromPassword(AESKeyBits.KEY_128, "a", "b", 0));
+        assertThrows(CryptoException.class, () -> AESUtils.getCachedAESKeyFromPassword(AESKeyBits.KEY_128, "", "b",
+                1000));
+    }
+
     /**
      * Tests {@link AESUtils#generateIv()} method.
      */
@@ -104,6 +169,20 @@ class AESUtilsTest {
         assertEquals(16, generateIvForGCM().getIV().length);
     }
 
+    /**
+     * Tests {@link AESUtils#generateCounterIvForGCM()} method.
+     */
+    @Test
+    @DisplayName("Test generating counter based nonces for GCM")
+    void testGenerateCounterIvForGCM() {
+        GCMParameterSpec first = AESUtils.generateCounterIvForGCM();
+        GCMParameterSpec second = AESUtils.generateCounterIvForGCM();
+        assertEquals(12, first.getIV().length);
+        assertEquals(128, first.getTLen());
+        assertArrayEquals(Arrays.copyOf(first.getIV(), 4), Arrays.copyOf(second.getIV(), 4));
+        assertEquals(ByteBuffer.wrap(first.getIV()).getLong(4) + 1, ByteBuffer.wrap(second.getIV()).getLong(4));
+    }
+
     /**
      * Tests {@link AESUtils#generateIv(String)} method.
      */
@@ -114,6 +193,47 @@ class AESUtilsTest {
         assertEquals(16, generateIvForGCM(input).getIV().length);
     }
 
+    /**
+     * Tests {@link AESUtils#encryptBufferToAESWithAlgorithm(String, ByteBuffer, ByteBuffer, SecretKey,
+     * AlgorithmParameterSpec)} and {@link AESUtils#decryptAESBufferWithAlgorithm(String, ByteBuffer, ByteBuffer,
+     * SecretKey, AlgorithmParameterSpec)} methods.
+     */
+    @Test
+    @DisplayName("Test encrypting and decrypting buffers")
+    void testEncryptAndDecryptBuffers() {
+        SecretKey key = generateAESKey(AESKeyBits.KEY_256);
+        byte[] content = new byte[1000];
+        new Random(3).nextBytes(content);
+        String[] algorithms = {"AES/GCM/NoPadding", "AES/CBC/PKCS5PADDING", "AES/CTR/NoPadding"};
+        AlgorithmParameterSpec[] ivs = {generateCounterIvForGCM(), generateIv(), generateIv()};
+        for (int i = 0; i < algorithms.length; i++) {
+            ByteBuffer input = ByteBuffer.allocateDirect(content.length);
+            input.put(content).flip();
+            ByteBuffer encrypted = ByteBuffer.allocateDirect(
+                    AESUtils.getAESEncryptedSize(algorithms[i], content.length));
+            int encryptedLength = AESUtils.encryptBufferToAESWithAlgorithm(algorithms[i], input, encrypted, key,
+                    ivs[i]);
+            assertEquals(encrypted.capacity(), encryptedLength);
+            assertFalse(input.hasRemaining());
+            encrypted.flip();
+
+            ByteBuffer decrypted = ByteBuffer.allocateDirect(
+                    AESUtils.getAESDecryptedSize(algorithms[i], encryptedLength));
+            int decryptedLength = AESUtils.decryptAESBufferWithAlgorithm(algorithms[i], encrypted, decrypted, key,
+                    ivs[i]);
+            assertEquals(content.length, decryptedLength);
+            byte[] result = new byte[decryptedLength];
+            ((ByteBuffer) decrypted.flip()).get(result);
+            assertArrayEquals(content, result);
+        }
+
+        assertEquals(1008, AESUtils.getAESEncryptedSize("AES/CBC/PKCS5PADDING", 1000));
+        assertEquals(1024, AESUtils.getAESEncryptedSize("AES/CBC/PKCS5PADDING", 1008));
+        assertThrows(InvalidInputException.class, () -> AESUtils.encryptBufferToAESWithAlgorithm(
+                "AES/GCM/NoPadding", ByteBuffer.wrap(content), ByteBuffer.allocate(1000), key,
+                generateCounterIvForGCM()));
+    }
+
     /**
      * Tests {@link AESUtils#encryptToAESWithCBC(String, SecretKey, IvParameterSpec)} and
      * {@link AESUtils#decryptAESWithCBC(String, SecretKey, IvParameterSpec)} methods.
@@ -129,6 +249,7 @@ class AESUtilsTest {
         // Try exception
         try(MockedStatic<Cipher> cipher = mockStatic(Cipher.class)) {
             cipher.when(() -> Cipher.getInstance(anyString())).thenThrow(NoSuchAlgorithmException.class);
+            AESUtils.getCipherPool().clear();
             assertThrows(CryptoException.class, () -> encryptToAESWithCBC(SAMPLE_MESSAGE, key, iv));
         }
     }
@@ -144,6 +265,12 @@ class AESUtilsTest {
         GCMParameterSpec iv = generateIvForGCM();
         String encryptedMessage = encryptToAESWithGCM(SAMPLE_MESSAGE, key, iv);
         assertEquals(SAMPLE_MESSAGE, AESUtils.decryptAESWithGCM(encryptedMessage, key, iv));
+
+        // Pooled ciphers are reused, even when encrypting again with the same IV
+        long hits = AESUtils.getCipherPool().getHits();
+        assertEquals(encryptedMessage, encryptToAESWithGCM(SAMPLE_MESSAGE, key, iv));
+        assertEquals(encryptedMessage, encryptToAESWithGCM(SAMPLE_MESSAGE, key, iv));
+        assertTrue(AESUtils.getCipherPool().getHits() > hits);
     }
 
     /**
@@ -202,6 +329,7 @@ class AESUtilsTest {
         // Try exception
         try(MockedStatic<Cipher> cipher = mockStatic(Cipher.class)) {
             cipher.when(() -> Cipher.getInstance(anyString())).thenThrow(NoSuchAlgorithmException.class);
+            AESUtils.getCipherPool().clear();
             assertThrows(CryptoException.class, () -> encryptFileToAESWithCBC(input, output, key, iv));
         }
     }
@@ -232,6 +360,238 @@ class AESUtilsTest {
         assertArrayEquals(SAMPLE_MESSAGE.getBytes(StandardCharsets.UTF_8), Files.readAllBytes(decryptedOut.toPath()));
     }
 
+    /**
+     * Tests {@link AESUtils#encryptFileToAESWithAlgorithm(String, SecretKey, AlgorithmParameterSpec, File, File, int)}
+     * and {@link AESUtils#decryptAESFileWithAlgorithm(String, SecretKey, AlgorithmParameterSpec, File, File, int)}
+     * methods with files bigger than the buffer.
+     */
+    @Test
+    @DisplayName("Test encrypting and decrypting a file through several buffers")
+    void testEncryptAndDecryptFileWithBufferSize() throws IOException {
+        File input = File.createTempFile("input", "buffered-encryption", null);
+        File output = File.createTempFile("output", "buffered-encryption", null);
+        File decryptedOut = File.createTempFile("decryptedOut", "buffered-encryption", null);
+        input.deleteOnExit();
+        output.deleteOnExit();
+        decryptedOut.deleteOnExit();
+
+        byte[] content = new byte[100_003];
+        new Random(42).nextBytes(content);
+        Files.write(input.toPath(), content);
+
+        SecretKey key = generateAESKey(AESKeyBits.KEY_256);
+        IvParameterSpec iv = generateIv();
+        AESUtils.encryptFileToAESWithAlgorithm("AES/CBC/PKCS5PADDING", key, iv, input, output, 1000);
+        AESUtils.decryptAESFileWithAlgorithm("AES/CBC/PKCS5PADDING", key, iv, output, decryptedOut, 4096);
+        assertArrayEquals(content, Files.readAllBytes(decryptedOut.toPath()));
+        assertArrayEquals(encryptBytesToAESWithCBC(content, key, iv), Files.readAllBytes(output.toPath()));
+
+        GCMParameterSpec gcmIv = generateIvForGCM();
+        AESUtils.encryptFileToAESWithAlgorithm("AES/GCM/NoPadding", key, gcmIv, input, output, 333);
+        AESUtils.decryptAESFileWithAlgorithm("AES/GCM/NoPadding", key, gcmIv, output, decryptedOut, 8192);
+        assertArrayEquals(content, Files.readAllBytes(decryptedOut.toPath()));
+
+        // Authenticated files many times bigger than the default buffer
+        byte[] bigContent = new byte[1024 * 1024 + 5];
+        new Random(43).nextBytes(bigContent);
+        Files.write(input.toPath(), bigContent);
+        AESUtils.encryptFileToAESWithAlgorithm("AES/GCM/NoPadding", key, gcmIv, input, output);
+        assertEquals(bigContent.length + 16, output.length());
+        AESUtils.decryptAESFileWithAlgorithm("AES/GCM/NoPadding", key, gcmIv, output, decryptedOut);
+        assertArrayEquals(bigContent, Files.readAllBytes(decryptedOut.toPath()));
+
+        assertThrows(InvalidInputException.class, () -> AESUtils.encryptFileToAESWithAlgorithm(
+                "AES/GCM/NoPadding", key, gcmIv, input, output, 0));
+    }
+
+    /**
+     * Tests {@link AESUtils#encryptFileParallel(File, File, SecretKey, int, Executor)},
+     * {@link AESUtils#decryptFileParallel(File, File, SecretKey)} and
+     * {@link AESUtils#decryptFileRange(File, SecretKey, long, int)} methods.
+     */
+    @Test
+    @DisplayName("Test encrypting and decrypting a file in parallel segments")
+    void testEncryptAndDecryptFileParallel() throws IOException {
+        File input = File.createTempFile("input", "parallel-encryption", null);
+        File output = File.createTempFile("output", "parallel-encryption", null);
+        File decryptedOut = File.createTempFile("decryptedOut", "parallel-encryption", null);
+        input.deleteOnExit();
+        output.deleteOnExit();
+        decryptedOut.deleteOnExit();
+
+        byte[] content = new byte[100_003];
+        new Random(7).nextBytes(content);
+        Files.write(input.toPath(), content);
+
+        SecretKey key = generateAESKey(AESKeyBits.KEY_256);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            AESUtils.encryptFileParallel(input, output, key, 4096, executor);
+            assertEquals(32 + content.length + 25 * 16, output.length());
+            AESUtils.decryptFileParallel(output, decryptedOut, key, executor);
+        } finally {
+            executor.shutdown();
+        }
+        assertArrayEquals(content, Files.readAllBytes(decryptedOut.toPath()));
+        assertArrayEquals(Arrays.copyOfRange(content, 4000, 13000),
+                AESUtils.decryptFileRange(output, key, 4000, 9000));
+        assertArrayEquals(Arrays.copyOfRange(content, 99_000, content.length),
+                AESUtils.decryptFileRange(output, key, 99_000, 5000));
+        assertEquals(0, AESUtils.decryptFileRange(output, key, 200_000, 10).length);
+
+        // Empty files
+        Files.write(input.toPath(), new byte[0]);
+        AESUtils.encryptFileParallel(input, output, key);
+        AESUtils.decryptFileParallel(output, decryptedOut, key);
+        assertEquals(0, decryptedOut.length());
+
+        // Tampered, truncated and wrongly keyed files
+        Files.write(input.toPath(), content);
+        AESUtils.encryptFileParallel(input, output, key, 4096, ForkJoinPool.commonPool());
+        byte[] encrypted = Files.readAllBytes(output.toPath());
+        encrypted[50_000] ^= 1;
+        Files.write(output.toPath(), encrypted);
+        assertThrows(CryptoException.class, () -> AESUtils.decryptFileParallel(output, decryptedOut, key));
+        assertFalse(decryptedOut.exists());
+
+        // A missing input doesn't touch an existing output
+        File missingInput = new File(input.getParentFile(), "missing-" + System.nanoTime());
+        Files.write(decryptedOut.toPath(), content);
+        assertThrows(GenericException.class, () -> AESUtils.decryptFileParallel(missingInput, decryptedOut, key));
+        assertArrayEquals(content, Files.readAllBytes(decryptedOut.toPath()));
+        assertArrayEquals(Arrays.copyOf(content, 100), AESUtils.decryptFileRange(output, key, 0, 100));
+        Files.write(output.toPath(), Arrays.copyOf(encrypted, encrypted.length - 1));
+        assertThrows(CryptoException.class, () -> AESUtils.decryptFileParallel(output, decryptedOut, key));
+        encrypted[50_000] ^= 1;
+        Files.write(output.toPath(), encrypted);
+        SecretKey otherKey = generateAESKey(AESKeyBits.KEY_256);
+        assertThrows(CryptoException.class, () -> AESUtils.decryptFileRange(output, otherKey, 0, 10));
+        assertThrows(CryptoException.class, () -> AESUtils.decryptFileRange(input, key, 0, 10));
+        assertThrows(InvalidInputException.class, () -> AESUtils.encryptFileParallel(input, output, key, 0,
+                ForkJoinPool.commonPool()));
+    }
+
+    /**
+     * Tests {@link AESUtils#encryptingStream(OutputStream, SecretKey, int)} and
+     * {@link AESUtils#decryptingStream(InputStream, SecretKey)} methods.
+     */
+    @Test
+    @DisplayName("Test encrypting and decrypting streams")
+    void testEncryptingAndDecryptingStreams() throws IOException {
+        SecretKey key = generateAESKey(AESKeyBits.KEY_256);
+        for (int size : new int[]{0, 1, 999, 1000, 1001, 25_000}) {
+            byte[] content = new byte[size];
+            new Random(size).nextBytes(content);
+            byte[] encrypted = encryptStream(content, key, 1000);
+            assertEquals(24 + size + Math.max(1, (size + 999) / 1000) * 16, encrypted.length);
+            assertArrayEquals(content, decryptStream(encrypted, key));
+        }
+
+        byte[] content = SAMPLE_MESSAGE.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (OutputStream encrypting = AESUtils.encryptingStream(output, key)) {
+            for (byte b : content)
+                encrypting.write(b);
+        }
+        try (InputStream decrypting = AESUtils.decryptingStream(new ByteArrayInputStream(output.toByteArray()), key)) {
+            ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+            int b;
+            while ((b = decrypting.read()) != -1)
+                decrypted.write(b);
+            assertArrayEquals(content, decrypted.toByteArray());
+        }
+
+        // Tampered, truncated and wrongly keyed streams
+        byte[] large = new byte[5000];
+        byte[] encrypted = encryptStream(large, key, 1000);
+        byte[] tampered = encrypted.clone();
+        tampered[2000] ^= 1;
+        assertThrows(CryptoException.class, () -> decryptStream(tampered, key));
+        assertThrows(CryptoException.class, () -> decryptStream(Arrays.copyOf(encrypted, 24 + 2 * 1016), key));
+        assertThrows(CryptoException.class, () -> decryptStream(Arrays.copyOf(encrypted, encrypted.length - 1), key));
+        assertThrows(CryptoException.class, () -> decryptStream(encrypted, generateAESKey(AESKeyBits.KEY_256)));
+        assertThrows(CryptoException.class, () -> decryptStream(new byte[10], key));
+        assertThrows(InvalidInputException.class, () -> AESUtils.encryptingStream(output, key, 0));
+    }
+
+    /**
+     * Tests {@link AESUtils#encryptAllGCM(SecretKey, List)}, {@link AESUtils#encryptAllGCM(SecretKey, List, ByteBuffer)}
+     * and {@link AESUtils#decryptAllGCM(SecretKey, List)} methods.
+     */
+    @Test
+    @DisplayName("Test encrypting and decrypting batches of records with GCM")
+    void testEncryptAndDecryptAllGCM() {
+        SecretKey key = generateAESKey(AESKeyBits.KEY_256);
+        List<byte[]> records = new ArrayList<>();
+        for (int i = 0; i < 50; i++)
+            records.add(("record-" + i).getBytes(StandardCharsets.UTF_8));
+        records.add(new byte[0]);
+
+        List<byte[]> encrypted = AESUtils.encryptAllGCM(key, records);
+        List<byte[]> decrypted = AESUtils.decryptAllGCM(key, encrypted);
+        Set<String> nonces = new HashSet<>();
+        for (int i = 0; i < records.size(); i++) {
+            assertArrayEquals(records.get(i), decrypted.get(i));
+            assertEquals(records.get(i).length + 28, encrypted.get(i).length);
+            nonces.add(Base64.getEncoder().encodeToString(Arrays.copyOf(encrypted.get(i), 12)));
+        }
+        assertEquals(records.size(), nonces.size());
+
+        // Arena variant
+        ByteBuffer arena = ByteBuffer.allocate((int) AESUtils.getGCMArenaSize(records) + 5);
+        arena.position(5);
+        int[] offsets = AESUtils.encryptAllGCM(key, records, arena);
+        assertEquals(records.size() + 1, offsets.length);
+        assertEquals(5, offsets[0]);
+        assertEquals(arena.capacity(), offsets[records.size()]);
+        List<byte[]> fromArena = new ArrayList<>();
+        for (int i = 0; i < records.size(); i++)
+            fromArena.add(Arrays.copyOfRange(arena.array(), offsets[i], offsets[i + 1]));
+        decrypted = AESUtils.decryptAllGCM(key, fromArena);
+        for (int i = 0; i < records.size(); i++)
+            assertArrayEquals(records.get(i), decrypted.get(i));
+
+        assertThrows(InvalidInputException.class, () -> AESUtils.encryptAllGCM(key, records, ByteBuffer.allocate(10)));
+        encrypted.get(3)[15] ^= 1;
+        assertThrows(CryptoException.class, () -> AESUtils.decryptAllGCM(key, encrypted));
+        assertThrows(CryptoException.class, () -> AESUtils.decryptAllGCM(key,
+                Collections.singletonList(new byte[10])));
+        assertTrue(AESUtils.encryptAllGCM(key, null).isEmpty());
+    }
+
+    /**
+     * Encrypts the given content through an encrypting stream.
+     * @param content The content to encrypt.
+     * @param key The key to use.
+     * @param frameSize The frame size to use.
+     * @return The encrypted content.
+     */
+    private static byte[] encryptStream(byte[] content, SecretKey key, int frameSize) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (OutputStream encrypting = AESUtils.encryptingStream(output, key, frameSize)) {
+            encrypting.write(content, 0, content.length / 2);
+            encrypting.write(content, content.length / 2, content.length - content.length / 2);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Decrypts the given content through a decrypting stream.
+     * @param encrypted The content to decrypt.
+     * @param key The key to use.
+     * @return The decrypted content.
+     */
+    private static byte[] decryptStream(byte[] encrypted, SecretKey key) throws IOException {
+        ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+        try (InputStream decrypting = AESUtils.decryptingStream(new ByteArrayInputStream(encrypted), key)) {
+            byte[] buffer = new byte[777];
+            int read;
+            while ((read = decrypting.read(buffer)) != -1)
+                decrypted.write(buffer, 0, read);
+        }
+        return decrypted.toByteArray();
+    }
+
     /**
      * Tests {@link AESUtils#encryptToAESWithCBC(String, SecretKey, IvParameterSpec)} and
      * {@link AESUtils#decryptAESWithCBC(String, SecretKey, IvParameterSpec)} methods.
@@ -249,6 +609,7 @@ class AESUtilsTest {
         // Try exception
         try(MockedStatic<Cipher> cipher = mockStatic(Cipher.class)) {
             cipher.when(() -> Cipher.getInstance(anyString())).thenThrow(NoSuchAlgorithmException.class);
+            AESUtils.getCipherPool().clear();
             assertThrows(CryptoException.class, () -> encryptObjectToAESWithCBC(sampleEntry, key, iv));
         }
     }
@@ -267,4 +628,90 @@ class AESUtilsTest {
         SealedObject encryptedObj = encryptObjectToAESWithGCM(sampleEntry, key, iv);
         assertEquals(sampleEntry, AESUtils.decryptAESObjectWithGCM(encryptedObj, key, iv));
     }
+
+    /**
+     * Tests {@link AESUtils#encryptDeterministic(byte[], SecretKey, byte[]...)} and
+     * {@link AESUtils#decryptDeterministic(byte[], SecretKey, byte[]...)} with the vectors of RFC 5297.
+     */
+    @Test
+    @DisplayName("Test encrypting and decrypting deterministically with AES-SIV")
+    void testEncryptAndDecryptDeterministic() {
+        // RFC 5297, A.1
+        SecretKey key = new SecretKeySpec(hex("fffefdfcfbfaf9f8f7f6f5f4f3f2f1f0f0f1f2f3f4f5f6f7f8f9fafbfcfdfeff"), "AES");
+        byte[] associatedData = hex("101112131415161718191a1b1c1d1e1f2021222324252627");
+        byte[] plainText = hex("112233445566778899aabbccddee");
+        byte[] expected = hex("85632d07c6e8f37f950acd320a2ecc9340c02b9690c4dc04daef7f6afe5c");
+        assertArrayEquals(expected, AESUtils.encryptDeterministic(plainText, key, associatedData));
+        assertArrayEquals(plainText, AESUtils.decryptDeterministic(expected, key, associatedData));
+
+        // RFC 5297, A.2
+        SecretKey nonceKey = new SecretKeySpec(
+                hex("7f7e7d7c7b7a79787776757473727170404142434445464748494a4b4c4d4e4f"), "AES");
+        byte[][] parts = {
+                hex("00112233445566778899aabbccddeeffdeaddadadeaddadaffeeddccbbaa99887766554433221100"),
+                hex("102030405060708090a0"), hex("09f911029d74e35bd84156c5635688c0")};
+        byte[] longPlainText = hex("7468697320697320736f6d6520706c61696e7465787420746f20656e6372797074207573696e" +
+                "67205349562d414553");
+        byte[] longExpected = hex("7bdb6e3b432667eb06f4d14bff2fbd0fcb900f2fddbe404326601965c889bf17dba77ceb094fa6" +
+                "63b7a3f748ba8af829ea64ad544a272e9c485b62a3fd5c0d");
+        assertArrayEquals(longExpected, AESUtils.encryptDeterministic(longPlainText, nonceKey, parts));
+        assertArrayEquals(longPlainText, AESUtils.decryptDeterministic(longExpected, nonceKey, parts));
+
+        // Equal inputs give equal outputs, and tampering is detected
+        SecretKey generated = AESUtils.generateSIVKey(AESKeyBits.KEY_256);
+        assertEquals(64, generated.getEncoded().length);
+        String email = AESUtils.encryptDeterministic("user@example.com", generated);
+        assertEquals(email, AESUtils.encryptDeterministic("user@example.com", generated));
+        assertEquals("user@example.com", AESUtils.decryptDeterministic(email, generated));
+        assertArrayEquals(new byte[0], AESUtils.decryptDeterministic(
+                AESUtils.encryptDeterministic(new byte[0], generated), generated));
+        byte[] tampered = AESUtils.encryptDeterministic(plainText, key, associatedData);
+        tampered[20] ^= 1;
+        assertThrows(CryptoException.class, () -> AESUtils.decryptDeterministic(tampered, key, associatedData));
+        assertThrows(CryptoException.class, () -> AESUtils.decryptDeterministic(expected, key));
+        assertThrows(CryptoException.class, () -> AESUtils.decryptDeterministic(new byte[4], key));
+        assertThrows(InvalidInputException.class, () -> AESUtils.encryptDeterministic(plainText,
+                generateAESKey(AESKeyBits.KEY_128)));
+    }
+
+    /**
+     * Tests {@link AESUtils#encryptValue(Object, SecretKey)} and
+     * {@link AESUtils#decryptValue(byte[], Class, SecretKey)} methods.
+     */
+    @Test
+    @DisplayName("Test encrypting and decrypting values as json")
+    void testEncryptAndDecryptValue() {
+        SecretKey key = generateAESKey(AESKeyBits.KEY_256);
+        SamplePojo sampleEntry = new SamplePojo("test");
+        byte[] envelope = AESUtils.encryptValue(sampleEntry, key);
+        assertEquals(sampleEntry, AESUtils.decryptValue(envelope, SamplePojo.class, key));
+        assertFalse(Arrays.equals(envelope, AESUtils.encryptValue(sampleEntry, key)));
+
+        List<String> values = Arrays.asList("a", "b");
+        assertEquals(values, AESUtils.decryptValue(AESUtils.encryptValue(values, key),
+                new TypeReference<List<String>>() {}, key));
+        assertNull(AESUtils.decryptValue(AESUtils.encryptValue(null, key), SamplePojo.class, key));
+
+        byte[] tampered = envelope.clone();
+        tampered[tampered.length - 20] ^= 1;
+        assertThrows(CryptoException.class, () -> AESUtils.decryptValue(tampered, SamplePojo.class, key));
+        byte[] otherVersion = envelope.clone();
+        otherVersion[4] = 9;
+        assertThrows(CryptoException.class, () -> AESUtils.decryptValue(otherVersion, SamplePojo.class, key));
+        assertThrows(CryptoException.class, () -> AESUtils.decryptValue(envelope, SamplePojo.class,
+                generateAESKey(AESKeyBits.KEY_256)));
+        assertThrows(CryptoException.class, () -> AESUtils.decryptValue(new byte[10], SamplePojo.class, key));
+    }
+
+    /**
+     * Decodes a hexadecimal string.
+     * @param hex The hexadecimal string.
+     * @return The decoded bytes.
+     */
+    private static byte[] hex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        return bytes;
+    }
 }
@@ -1,19 +1,24 @@
 package io.github.dokkaltek.util;
 
 import io.github.dokkaltek.exception.CryptoException;
+import io.github.dokkaltek.exception.InvalidInputException;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.mockito.MockedStatic;
 
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.concurrent.CompletableFuture;
 
 import static io.github.dokkaltek.constant.literal.SpecialChars.EMPTY_STRING;
 import static io.github.dokkaltek.util.GeneratorUtils.generateRandomInt;
+import static io.github.dokkaltek.util.GeneratorUtils.getNonceRandomInstance;
 import static io.github.dokkaltek.util.GeneratorUtils.getSecureRandomInstance;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mockStatic;
@@ -121,4 +126,25 @@ class GeneratorUtilsTest {
             assertThrows(CryptoException.class, GeneratorUtils::getSecureRandomInstance);
         }
     }
+
+    /**
+     * Test for {@link GeneratorUtils#getNonceRandomInstance()} and
+     * {@link GeneratorUtils#setNonceRandomAlgorithm(String)} methods.
+     */
+    @Test
+    void testGetNonceRandomInstance() throws Exception {
+        SecureRandom random = getNonceRandomInstance();
+        assertSame(random, getNonceRandomInstance());
+        assertNotSame(random, CompletableFuture.supplyAsync(GeneratorUtils::getNonceRandomInstance).get());
+
+        try {
+            GeneratorUtils.setNonceRandomAlgorithm("SHA1PRNG");
+            assertEquals("SHA1PRNG", getNonceRandomInstance().getAlgorithm());
+            GeneratorUtils.setNonceRandomAlgorithm("Unknown");
+            assertNotNull(getNonceRandomInstance());
+            assertThrows(InvalidInputException.class, () -> GeneratorUtils.setNonceRandomAlgorithm(null));
+        } finally {
+            GeneratorUtils.setNonceRandomAlgorithm("DRBG");
+        }
+    }
 }
@@ -1,10 +1,19 @@
 package io.github.dokkaltek.util;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import io.github.dokkaltek.exception.InvalidInputException;
 import io.github.dokkaltek.exception.JSONException;
+import io.github.dokkaltek.helper.BatchParseResult;
+import io.github.dokkaltek.helper.IncrementalJsonParser;
+import io.github.dokkaltek.helper.ParseResult;
 import io.github.dokkaltek.samples.SamplePojo;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -12,26 +21,38 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
 
 import static io.github.dokkaltek.util.JsonUtils.convertObjectToBytes;
 import static io.github.dokkaltek.util.JsonUtils.convertToJSONString;
 import static io.github.dokkaltek.util.JsonUtils.convertToJSONStringOrElse;
 import static io.github.dokkaltek.util.JsonUtils.setObjectMapperInstance;
 import static io.github.dokkaltek.util.ReflectionUtils.getStaticField;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -228,6 +249,75 @@ class JsonUtilsTest {
         assertNull(JsonUtils.parseByteArrayOrElse(new byte[]{1, 2, 3}, Object.class, null));
     }
 
+    /**
+     * Test for {@link JsonUtils#parseAll(List, Class)} and {@link JsonUtils#parseAll(List, Class, Executor)} methods.
+     */
+    @Test
+    @DisplayName("Test parsing a batch of byte arrays into objects")
+    void testParseAll() {
+        List<byte[]> batch = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            SamplePojo pojo = new SamplePojo("name" + i);
+            pojo.setAge(i);
+            batch.add(i % 100 == 7 ? new byte[]{1, 2, 3} : JsonUtils.convertObjectToBytes(pojo));
+        }
+        batch.set(3, null);
+
+        BatchParseResult<SamplePojo> result = JsonUtils.parseAll(batch, SamplePojo.class);
+        assertEquals(500, result.size());
+        assertTrue(result.hasErrors());
+        assertEquals(5, result.errors().size());
+        assertTrue(result.isFailed(107));
+        assertNull(result.get(107));
+        assertNull(result.get(3));
+        assertFalse(result.isFailed(3));
+        for (int i = 0; i < 500; i++) {
+            if (i % 100 != 7 && i != 3) {
+                assertEquals("name" + i, result.get(i).getName());
+                assertEquals(i, result.get(i).getAge());
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            BatchParseResult<SamplePojo> executorResult = JsonUtils.parseAll(batch, SamplePojo.class, executor);
+            assertEquals(result.values(), executorResult.values());
+            assertEquals(result.errors().keySet(), executorResult.errors().keySet());
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(0, JsonUtils.parseAll(null, SamplePojo.class).size());
+        assertFalse(JsonUtils.parseAll(Collections.singletonList(batch.get(0)), SamplePojo.class).hasErrors());
+        assertThrows(InvalidInputException.class, () -> JsonUtils.parseAll(batch, SamplePojo.class, null));
+
+        // Runtime exceptions of deserializers are reported per item too
+        ObjectMapper originalMapper = JsonUtils.getObjectMapperInstance();
+        setObjectMapperInstance(new ObjectMapper().registerModule(new SimpleModule()
+                .addDeserializer(SamplePojo.class, new JsonDeserializer<SamplePojo>() {
+                    @Override
+                    public SamplePojo deserialize(JsonParser parser, DeserializationContext context)
+                            throws IOException {
+                        JsonNode node = parser.readValueAsTree();
+                        if (node.get("age").asInt() % 50 == 0)
+                            throw new IllegalStateException("Broken deserializer");
+                        return new SamplePojo(node.get("name").asText());
+                    }
+                })));
+        ExecutorService failingExecutor = Executors.newFixedThreadPool(4);
+        try {
+            BatchParseResult<SamplePojo> failingResult = JsonUtils.parseAll(batch, SamplePojo.class,
+                    failingExecutor);
+            assertEquals(500, failingResult.size());
+            assertTrue(failingResult.isFailed(50));
+            assertEquals(15, failingResult.errors().size());
+            assertEquals("name51", failingResult.get(51).getName());
+        } finally {
+            failingExecutor.shutdown();
+            setObjectMapperInstance(originalMapper);
+        }
+    }
+
     /**
      * Test for {@link JsonUtils#parseByteArrayToList(byte[])} method.
      */
@@ -258,6 +348,51 @@ class JsonUtilsTest {
         assertThrows(JSONException.class, () -> JsonUtils.parseByteArrayToMap(new byte[]{1, 2, 3}));
     }
 
+    /**
+     * Test for {@link JsonUtils#parseByteArrayToCompactMap(byte[])} and
+     * {@link JsonUtils#convertJSONToCompactMap(String)} methods.
+     */
+    @Test
+    @DisplayName("Test parsing json into compact maps with interned keys")
+    void testParseToCompactMap() {
+        String json = "{\"name\":\"John\",\"age\":30,\"tags\":[\"a\",{\"name\":null}],\"active\":true," +
+                "\"score\":1.5,\"age\":31}";
+        Map<String, Object> expected = JsonUtils.convertJSONToMap(json);
+        Map<String, Object> first = JsonUtils.convertJSONToCompactMap(json);
+        Map<String, Object> second = JsonUtils.parseByteArrayToCompactMap(json.getBytes(StandardCharsets.UTF_8));
+        assertEquals(expected, first);
+        assertEquals(expected, second);
+        assertEquals(5, first.size());
+        assertEquals(31, first.get("age"));
+        assertNull(first.get("missing"));
+        assertTrue(first.containsKey("tags"));
+        assertEquals(first.hashCode(), expected.hashCode());
+
+        // Keys of different documents are the same instance, since Jackson interns them
+        String firstKey = first.keySet().stream().filter("name"::equals).findFirst().orElse(null);
+        String secondKey = second.keySet().stream().filter("name"::equals).findFirst().orElse(null);
+        assertSame(firstKey, secondKey);
+        assertThrows(UnsupportedOperationException.class, () -> first.put("other", 1));
+
+        // Keys are still shared if the mapper doesn't intern them
+        ObjectMapper originalMapper = JsonUtils.getObjectMapperInstance();
+        setObjectMapperInstance(new ObjectMapper(JsonFactory.builder()
+                .disable(JsonFactory.Feature.INTERN_FIELD_NAMES).build()));
+        try {
+            Map<String, Object> notInterned = JsonUtils.parseByteArrayToCompactMap(
+                    "{\"name\":\"Guybrush\"}".getBytes(StandardCharsets.UTF_8));
+            assertSame(firstKey, notInterned.keySet().iterator().next());
+        } finally {
+            setObjectMapperInstance(originalMapper);
+        }
+
+        assertEquals(Collections.emptyMap(), JsonUtils.convertJSONToCompactMap(null));
+        assertEquals(Collections.emptyMap(), JsonUtils.parseByteArrayToCompactMap(new byte[]{}));
+        assertThrows(JSONException.class, () -> JsonUtils.convertJSONToCompactMap("[1, 2]"));
+        assertThrows(JSONException.class, () -> JsonUtils.convertJSONToCompactMap(INVALID_JSON));
+        assertThrows(JSONException.class, () -> JsonUtils.parseByteArrayToCompactMap(new byte[]{1, 2, 3}));
+    }
+
     /**
      * Test for {@link JsonUtils#parseByteArrayToParametrizedType(byte[], TypeReference)} method.
      */
@@ -300,6 +435,89 @@ class JsonUtilsTest {
         assertNull(JsonUtils.parseInputStreamOrElse(emptyInputStream, SamplePojo.class, null));
     }
 
+    /**
+     * Test for {@link JsonUtils#tryParseJSON(String, Class)}, {@link JsonUtils#tryParseByteArray(byte[], Class)} and
+     * {@link JsonUtils#tryParseInputStream(InputStream, Class)} methods.
+     */
+    @Test
+    @DisplayName("Test parsing without throwing on failure")
+    void testTryParse() {
+        ParseResult<SamplePojo> result = JsonUtils.tryParseJSON(SAMPLE_JSON_POJO, SamplePojo.class);
+        assertTrue(result.isSuccess());
+        assertEquals(samplePojo, result.getValue());
+        assertEquals(samplePojo, result.toOptional().orElse(null));
+
+        ParseResult<SamplePojo> failure = JsonUtils.tryParseJSON(INVALID_JSON, SamplePojo.class);
+        assertTrue(failure.isFailure());
+        assertFalse(failure.isSuccess());
+        assertNotNull(failure.getError());
+        assertEquals(samplePojo, failure.orElse(samplePojo));
+
+        ParseResult<SamplePojo> empty = JsonUtils.tryParseJSON(" ", SamplePojo.class);
+        assertTrue(empty.isEmpty());
+        assertFalse(empty.isFailure());
+        assertEquals(samplePojo, empty.orElse(samplePojo));
+
+        assertNull(JsonUtils.tryParseJSON("null", SamplePojo.class).orElse(samplePojo));
+        assertEquals(samplePojo, JsonUtils.tryParseByteArray(SAMPLE_JSON_POJO.getBytes(StandardCharsets.UTF_8),
+                SamplePojo.class).getValue());
+        assertTrue(JsonUtils.tryParseByteArray(new byte[]{1, 2, 3}, SamplePojo.class).isFailure());
+        assertTrue(JsonUtils.tryParseByteArray(null, SamplePojo.class).isEmpty());
+        assertEquals(samplePojo, JsonUtils.tryParseInputStream(new ByteArrayInputStream(
+                SAMPLE_JSON_POJO.getBytes(StandardCharsets.UTF_8)), SamplePojo.class).getValue());
+        assertTrue(JsonUtils.tryParseInputStream(new ByteArrayInputStream(new byte[]{1, 2, 3}),
+                SamplePojo.class).isFailure());
+        assertTrue(JsonUtils.tryParseInputStream(null, SamplePojo.class).isEmpty());
+    }
+
+    /**
+     * Test for {@link JsonUtils#enableFailureLogging(long, TimeUnit)} and {@link JsonUtils#disableFailureLogging()}
+     * methods.
+     */
+    @Test
+    @DisplayName("Test the opt-in and rate-limited logging of the OrElse methods")
+    void testFailureLogging() {
+        Logger logger = Logger.getLogger(JsonUtils.class.getName());
+        List<LogRecord> records = new ArrayList<>();
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord logRecord) {
+                records.add(logRecord);
+            }
+
+            @Override
+            public void flush() {
+                // Nothing to flush
+            }
+
+            @Override
+            public void close() {
+                // Nothing to close
+            }
+        };
+        logger.addHandler(handler);
+        try {
+            JsonUtils.parseJSONOrElse(INVALID_JSON, SamplePojo.class, null);
+            assertTrue(records.isEmpty());
+
+            JsonUtils.enableFailureLogging(1, TimeUnit.HOURS);
+            for (int i = 0; i < 5; i++)
+                JsonUtils.parseByteArrayOrElse(new byte[]{1, 2, 3}, SamplePojo.class, null);
+            assertEquals(1, records.size());
+
+            JsonUtils.enableFailureLogging(0, TimeUnit.MILLISECONDS);
+            JsonUtils.parseJSONOrElse(INVALID_JSON, SamplePojo.class, null);
+            JsonUtils.parseJSONOrElse(INVALID_JSON, SamplePojo.class, null);
+            assertEquals(3, records.size());
+            assertThrows(InvalidInputException.class, () -> JsonUtils.enableFailureLogging(-1, TimeUnit.SECONDS));
+        } finally {
+            JsonUtils.disableFailureLogging();
+            logger.removeHandler(handler);
+        }
+        JsonUtils.parseJSONOrElse(INVALID_JSON, SamplePojo.class, null);
+        assertEquals(3, records.size());
+    }
+
     /**
      * Test for {@link JsonUtils#parseInputStreamToList(InputStream)} method.
      */
@@ -347,6 +565,83 @@ class JsonUtilsTest {
                 () -> JsonUtils.parseInputStreamToParametrizedType(emptyInputStream, typeRef));
     }
 
+    /**
+     * Test for {@link JsonUtils#incrementalParser(Class)} and {@link JsonUtils#incrementalByteBufferParser(Class)}
+     * methods.
+     */
+    @Test
+    @DisplayName("Test parsing json incrementally from chunks")
+    void testIncrementalParser() {
+        String json = "[" + SAMPLE_JSON_POJO + ", {\"name\":\"Guybrush\",\"age\":20}]";
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        List<SamplePojo> values = new ArrayList<>();
+        try (IncrementalJsonParser<SamplePojo> parser = JsonUtils.incrementalParser(SamplePojo.class)) {
+            for (int i = 0; i < bytes.length; i += 7) {
+                values.addAll(parser.feed(bytes, i, Math.min(7, bytes.length - i)));
+                if (i == 0)
+                    assertTrue(values.isEmpty());
+            }
+            values.addAll(parser.endOfInput());
+        }
+        assertEquals(2, values.size());
+        assertEquals(samplePojo, values.get(0));
+        assertEquals("Guybrush", values.get(1).getName());
+
+        // Several root values in direct buffers
+        String lines = SAMPLE_JSON_POJO + "\n" + SAMPLE_JSON_POJO + "\n";
+        ByteBuffer direct = ByteBuffer.allocateDirect(64);
+        List<SamplePojo> lineValues = new ArrayList<>();
+        try (IncrementalJsonParser<SamplePojo> parser = JsonUtils.incrementalByteBufferParser(SamplePojo.class)) {
+            byte[] lineBytes = lines.getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i < lineBytes.length; i += 10) {
+                direct.clear();
+                direct.put(lineBytes, i, Math.min(10, lineBytes.length - i)).flip();
+                lineValues.addAll(parser.feed(direct));
+                assertFalse(direct.hasRemaining());
+            }
+            lineValues.addAll(parser.endOfInput());
+        }
+        assertEquals(Arrays.asList(samplePojo, samplePojo), lineValues);
+
+        // Arrays are kept whole when the target type is an array or collection
+        try (IncrementalJsonParser<int[]> parser = JsonUtils.incrementalParser(int[].class)) {
+            assertTrue(parser.feed("[1, 2".getBytes(StandardCharsets.UTF_8)).isEmpty());
+            assertTrue(parser.hasPendingValue());
+            assertArrayEquals(new int[]{1, 2, 3}, parser.feed(ByteBuffer.wrap(", 3]".getBytes(StandardCharsets.UTF_8)))
+                    .get(0));
+        }
+
+        try (IncrementalJsonParser<SamplePojo> parser = JsonUtils.incrementalParser(SamplePojo.class)) {
+            parser.feed("{\"name\":".getBytes(StandardCharsets.UTF_8));
+            assertThrows(JSONException.class, parser::endOfInput);
+        }
+        try (IncrementalJsonParser<SamplePojo> parser = JsonUtils.incrementalParser(SamplePojo.class)) {
+            assertThrows(JSONException.class, () -> parser.feed(INVALID_JSON.getBytes(StandardCharsets.UTF_8)));
+        }
+        try (IncrementalJsonParser<SamplePojo> parser = JsonUtils.incrementalParser(SamplePojo.class)) {
+            parser.setMaxPendingBytes(8);
+            assertThrows(InvalidInputException.class,
+                    () -> parser.feed("{\"name\":\"Guybrush".getBytes(StandardCharsets.UTF_8)));
+        }
+
+        // The bytes of the next value count after a value completes
+        try (IncrementalJsonParser<SamplePojo> parser = JsonUtils.incrementalParser(SamplePojo.class)) {
+            parser.setMaxPendingBytes(30);
+            assertEquals(1, parser.feed("{\"name\":\"a\"} {\"name\":\"bbbbb".getBytes(StandardCharsets.UTF_8)).size());
+            assertThrows(InvalidInputException.class,
+                    () -> parser.feed("bbbbbbbbbbbbbbbb".getBytes(StandardCharsets.UTF_8)));
+        }
+
+        // The values before a failed one are returned, and the failure is thrown next
+        try (IncrementalJsonParser<SamplePojo> parser = JsonUtils.incrementalParser(SamplePojo.class)) {
+            List<SamplePojo> completed = parser.feed(("[{\"name\":\"a\"}, {\"age\":\"old\"}, {\"name\":\"c\"}]")
+                    .getBytes(StandardCharsets.UTF_8));
+            assertEquals(1, completed.size());
+            assertEquals("a", completed.get(0).getName());
+            assertThrows(JSONException.class, parser::endOfInput);
+        }
+    }
+
     /**
      * Test for {@link JsonUtils#readJSON(String)} method.
      */
@@ -451,6 +746,18 @@ class JsonUtilsTest {
         assertNotNull(JsonUtils.createArrayNode());
     }
 
+    /**
+     * Test for {@link JsonUtils#getFieldAtPath(JsonNode, String)} method.
+     */
+    @Test
+    @DisplayName("Test getting a nested field of a json node")
+    void testGetFieldAtPath() {
+        JsonNode node = JsonUtils.readJSON("{\"user\":{\"roles\":[\"admin\",\"user\"]}}");
+        assertEquals("user", JsonUtils.getFieldAtPath(node, "/user/roles/1").asText());
+        assertNull(JsonUtils.getFieldAtPath(node, "/user/roles/2"));
+        assertNull(JsonUtils.getFieldAtPath(null, "/user"));
+    }
+
     /**
      * Test for {@link JsonUtils#getFieldAsString(JsonNode, String)} method.
      */
@@ -1,13 +1,25 @@
 package io.github.dokkaltek.util;
 
+import io.github.dokkaltek.helper.LazyLogValue;
 import io.github.dokkaltek.samples.SamplePojo;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static io.github.dokkaltek.constant.literal.SpecialChars.EMPTY_STRING;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * Tests for {@link LoggingUtils} class.
@@ -26,6 +38,18 @@ class LoggingUtilsTest {
         assertNull(LoggingUtils.encodeForLog(null));
     }
 
+    /**
+     * Tests {@link LoggingUtils#encodeForLog(Object)} method with strings that have nothing to escape.
+     */
+    @Test
+    @DisplayName("Test encoding safe strings for log")
+    void testEncodeForLogSafeStrings() {
+        String safe = "GET /api/v1/orders/42?page=1 status=200 user=guybrush@example.com";
+        assertSame(safe, LoggingUtils.encodeForLog(safe));
+        assertEquals("order 42 \\\"x\\\" \\' \\\\ \\r\\n", LoggingUtils.encodeForLog("order 42 \"x\" ' \\ \r\n"));
+        assertEquals("name=\\u2028\\351", LoggingUtils.encodeForLog("name=\u2028\u00e9"));
+    }
+
     /**
      * Tests {@link LoggingUtils#maskField(String, String...)} method.
      */
@@ -91,4 +115,68 @@ class LoggingUtilsTest {
                 LoggingUtils.maskFieldUntilCharWithRange("email: guybrush@threepwood.com", '@',0, 6, (String) null));
         assertEquals(EMPTY_STRING, LoggingUtils.maskFieldUntilCharWithRange(null, '@', 0, 6, "email"));
     }
+
+    /**
+     * Tests {@link LoggingUtils#maskJson(String, Set)} and {@link LoggingUtils#maskJson(byte[], Set)} methods.
+     */
+    @Test
+    @DisplayName("Test masking fields of a json")
+    void testMaskJson() {
+        String json = "{\"user\":{\"name\":\"guybrush threepwood\",\"password\":\"my secret\"," +
+                "\"cards\":[{\"number\":\"4111 1111\"}]},\"number\":1.10,\"password\":null}";
+        Set<String> fields = new HashSet<>(Arrays.asList("password", "/user/cards"));
+        assertEquals("{\"user\":{\"name\":\"guybrush threepwood\",\"password\":\"*****\",\"cards\":\"*****\"}," +
+                "\"number\":1.10,\"password\":\"*****\"}", LoggingUtils.maskJson(json, fields));
+        assertEquals("{\"user\":{\"name\":\"guybrush threepwood\",\"password\":\"my secret\",\"cards\":" +
+                "[{\"number\":\"*****\"}]},\"number\":1.10,\"password\":null}",
+                LoggingUtils.maskJson(json, Collections.singleton("/user/cards/0/number")));
+        assertEquals(LoggingUtils.maskJson(json, fields), new String(LoggingUtils.maskJson(
+                json.getBytes(StandardCharsets.UTF_8), fields), StandardCharsets.UTF_8));
+
+        // Invalid json is masked as text
+        assertEquals("password=*****, {\"broken\"", LoggingUtils.maskJson("password=secret, {\"broken\"",
+                Collections.singleton("/user/password")));
+        assertEquals("{\"user\":\"x\",\"password\":\"*****\",\"note\":\"trunc",
+                LoggingUtils.maskJson("{\"user\":\"x\",\"password\":\"hunter2\",\"note\":\"trunc", fields));
+        assertEquals("{\"user\":\"x\",\"password\":\"*****\"",
+                LoggingUtils.maskJson("{\"user\":\"x\",\"password\":{\"a\":\"x\",\"b\":\"secret\"", fields));
+        assertEquals("{\"password\":\"*****\",\"note\":\"ok\"} x", LoggingUtils.maskJson(
+                "{\"password\":[{\"b\":\"se]}cret\"},[2]],\"note\":\"ok\"} x", fields));
+        assertEquals("{\"password\":\"*****\"} trailing",
+                LoggingUtils.maskJson("{\"password\":\"hunter2\"} trailing", fields));
+        assertEquals("{\"password\" : \"*****\"", LoggingUtils.maskJson("{\"password\" : \"hun\\\"ter", fields));
+        assertEquals("[{\"pin\":\"*****\"},{\"password\":\"*****\"}] x", new String(LoggingUtils.maskJson(
+                "[{\"pin\":1234},{\"password\":\"hunter2\"}] x".getBytes(StandardCharsets.UTF_8),
+                new HashSet<>(Arrays.asList("password", "/0/pin"))), StandardCharsets.UTF_8));
+        assertEquals(json, LoggingUtils.maskJson(json, Collections.emptySet()));
+        assertEquals(EMPTY_STRING, LoggingUtils.maskJson((String) null, fields));
+        assertArrayEquals(new byte[0], LoggingUtils.maskJson((byte[]) null, fields));
+    }
+
+    /**
+     * Tests {@link LoggingUtils#lazyEncoded(Object)} and {@link LoggingUtils#lazyMasked(String, String...)} methods.
+     */
+    @Test
+    @DisplayName("Test lazy encoding and masking for log")
+    void testLazyLogValues() {
+        AtomicInteger calls = new AtomicInteger();
+        Object argument = new Object() {
+            @Override
+            public String toString() {
+                calls.incrementAndGet();
+                return "line\nbreak";
+            }
+        };
+        LazyLogValue encoded = LoggingUtils.lazyEncoded(argument);
+        assertFalse(encoded.isComputed());
+        assertEquals(0, calls.get());
+        assertEquals("line\\nbreak", encoded.toString());
+        assertEquals("line\\nbreak", encoded.toString());
+        assertTrue(encoded.isComputed());
+        assertEquals(1, calls.get());
+
+        assertEquals("name=guybrush, password = *****",
+                LoggingUtils.lazyMasked("name=guybrush, password = test", "password").toString());
+        assertEquals("null", LoggingUtils.lazyEncoded(null).toString());
+    }
 }
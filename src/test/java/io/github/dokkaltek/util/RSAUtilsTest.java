@@ -1,15 +1,22 @@
 package io.github.dokkaltek.util;
 
 import io.github.dokkaltek.constant.RSAKeyBits;
+import io.github.dokkaltek.constant.RSASignatureAlgorithm;
 import io.github.dokkaltek.exception.CryptoException;
 import io.github.dokkaltek.exception.GenericException;
+import io.github.dokkaltek.exception.InvalidInputException;
+import io.github.dokkaltek.helper.SignedMessage;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.mockito.MockedStatic;
 
 import javax.crypto.Cipher;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -19,6 +26,12 @@ import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
 
 import static io.github.dokkaltek.util.RSAUtils.readPrivateKeyFromFile;
 import static io.github.dokkaltek.util.RSAUtils.readPublicKeyFromFile;
@@ -26,8 +39,10 @@ import static io.github.dokkaltek.util.RSAUtils.writePrivateKeyToFile;
 import static io.github.dokkaltek.util.RSAUtils.writePublicKeyToFile;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mockStatic;
@@ -137,4 +152,141 @@ class RSAUtilsTest {
         byte[] encryptedBytes = RSAUtils.encryptBytesToRSA(sampleBytes, publicKey);
         assertArrayEquals(sampleBytes, RSAUtils.decryptRSABytes(encryptedBytes, privateKey));
     }
+
+    /**
+     * Tests {@link RSAUtils#encryptBufferToRSAWithAlgorithm(String, ByteBuffer, ByteBuffer, PublicKey)} and
+     * {@link RSAUtils#decryptRSABufferWithAlgorithm(String, ByteBuffer, ByteBuffer, PrivateKey)} methods.
+     */
+    @Test
+    @DisplayName("Test encrypting and decrypting buffers with RSA")
+    void testEncryptBufferToRSA() {
+        String algorithm = "RSA/ECB/OAEPWithSHA-256AndMGF1Padding";
+        byte[] sampleBytes = "Hello world!".getBytes(StandardCharsets.UTF_8);
+        KeyPair keyPair = RSAUtils.generateRSAKeyPair(RSAKeyBits.KEY_2048);
+        assertEquals(256, RSAUtils.getRSAOutputSize(keyPair.getPublic()));
+
+        ByteBuffer input = ByteBuffer.allocateDirect(sampleBytes.length);
+        input.put(sampleBytes).flip();
+        ByteBuffer encrypted = ByteBuffer.allocateDirect(RSAUtils.getRSAOutputSize(keyPair.getPublic()));
+        assertEquals(256, RSAUtils.encryptBufferToRSAWithAlgorithm(algorithm, input, encrypted,
+                keyPair.getPublic()));
+        assertEquals(0, input.remaining());
+        encrypted.flip();
+
+        ByteBuffer decrypted = ByteBuffer.allocate(RSAUtils.getRSAOutputSize(keyPair.getPrivate()));
+        int length = RSAUtils.decryptRSABufferWithAlgorithm(algorithm, encrypted, decrypted, keyPair.getPrivate());
+        assertArrayEquals(sampleBytes, Arrays.copyOf(decrypted.array(), length));
+
+        assertThrows(InvalidInputException.class, () -> RSAUtils.encryptBufferToRSAWithAlgorithm(algorithm,
+                ByteBuffer.wrap(sampleBytes), ByteBuffer.allocate(10), keyPair.getPublic()));
+        assertThrows(InvalidInputException.class, () -> RSAUtils.getRSAOutputSize(null));
+    }
+
+    /**
+     * Tests {@link RSAUtils#sealEnvelope(byte[], PublicKey)}, {@link RSAUtils#openEnvelope(byte[], PrivateKey)} and
+     * their stream variants.
+     */
+    @Test
+    @DisplayName("Test sealing and opening envelopes with RSA")
+    void testSealAndOpenEnvelope() throws IOException {
+        KeyPair keyPair = RSAUtils.generateRSAKeyPair(RSAKeyBits.KEY_2048);
+        byte[] payload = new byte[200_000];
+        new Random(5).nextBytes(payload);
+
+        byte[] envelope = RSAUtils.sealEnvelope(payload, keyPair.getPublic());
+        assertArrayEquals(payload, RSAUtils.openEnvelope(envelope, keyPair.getPrivate()));
+        assertArrayEquals(new byte[0], RSAUtils.openEnvelope(RSAUtils.sealEnvelope(new byte[0],
+                keyPair.getPublic()), keyPair.getPrivate()));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RSAUtils.sealEnvelope(new ByteArrayInputStream(payload), output, keyPair.getPublic());
+        try (InputStream opened = RSAUtils.openEnvelope(new ByteArrayInputStream(output.toByteArray()),
+                keyPair.getPrivate())) {
+            ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = opened.read(buffer)) != -1)
+                decrypted.write(buffer, 0, read);
+            assertArrayEquals(payload, decrypted.toByteArray());
+        }
+
+        // Tampered envelopes and wrong keys
+        byte[] tampered = envelope.clone();
+        tampered[tampered.length - 100] ^= 1;
+        assertThrows(CryptoException.class, () -> RSAUtils.openEnvelope(tampered, keyPair.getPrivate()));
+        PrivateKey otherKey = RSAUtils.generateRSAKeyPair(RSAKeyBits.KEY_2048).getPrivate();
+        assertThrows(CryptoException.class, () -> RSAUtils.openEnvelope(envelope, otherKey));
+        assertThrows(CryptoException.class, () -> RSAUtils.openEnvelope(Arrays.copyOf(envelope, 100),
+                keyPair.getPrivate()));
+        assertThrows(CryptoException.class, () -> RSAUtils.openEnvelope(new byte[10], keyPair.getPrivate()));
+    }
+
+    /**
+     * Tests {@link RSAUtils#sign(RSASignatureAlgorithm, byte[], PrivateKey)} and
+     * {@link RSAUtils#verify(RSASignatureAlgorithm, byte[], byte[], PublicKey)}.
+     */
+    @Test
+    @DisplayName("Test signing and verifying with RSA")
+    void testSignAndVerify() throws Exception {
+        KeyPair keyPair = RSAUtils.generateRSAKeyPair(RSAKeyBits.KEY_2048);
+        byte[] message = "webhook payload".getBytes(StandardCharsets.UTF_8);
+
+        for (RSASignatureAlgorithm algorithm : RSASignatureAlgorithm.values()) {
+            byte[] signature = RSAUtils.sign(algorithm, message, keyPair.getPrivate());
+            assertTrue(RSAUtils.verify(algorithm, message, signature, keyPair.getPublic()));
+            assertFalse(RSAUtils.verify(algorithm, "other payload".getBytes(StandardCharsets.UTF_8), signature,
+                    keyPair.getPublic()));
+            assertFalse(RSAUtils.verify(algorithm, message, new byte[10], keyPair.getPublic()));
+        }
+
+        // Interoperable with plain JCA signatures
+        Signature jca = Signature.getInstance("SHA256withRSA");
+        jca.initSign(keyPair.getPrivate());
+        jca.update(message);
+        assertTrue(RSAUtils.verify(RSASignatureAlgorithm.PKCS1_SHA256, message, jca.sign(), keyPair.getPublic()));
+        assertTrue(RSAUtils.verify(message, RSAUtils.sign(message, keyPair.getPrivate()), keyPair.getPublic()));
+
+        // The default algorithm is PKCS#1 v1.5, available on every Java 8 runtime
+        jca.initVerify(keyPair.getPublic());
+        jca.update(message);
+        assertTrue(jca.verify(RSAUtils.sign(message, keyPair.getPrivate())));
+        assertThrows(NullPointerException.class, () -> RSAUtils.sign(null, keyPair.getPrivate()));
+    }
+
+    /**
+     * Tests {@link RSAUtils#verifyAll(List, PublicKey)} method.
+     */
+    @Test
+    @DisplayName("Test verifying many RSA signatures at once")
+    void testVerifyAll() {
+        KeyPair keyPair = RSAUtils.generateRSAKeyPair(RSAKeyBits.KEY_2048);
+        PublicKey otherKey = RSAUtils.generateRSAKeyPair(RSAKeyBits.KEY_2048).getPublic();
+        List<SignedMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            byte[] message = ("token " + i).getBytes(StandardCharsets.UTF_8);
+            byte[] signature = RSAUtils.sign(message, keyPair.getPrivate());
+            if (i % 5 == 0)
+                signature[0] ^= 1;
+            messages.add(SignedMessage.of(message, signature));
+        }
+
+        RSAUtils.clearVerificationCache();
+        for (int round = 0; round < 2; round++) {
+            boolean[] results = RSAUtils.verifyAll(messages, keyPair.getPublic());
+            for (int i = 0; i < results.length; i++)
+                assertEquals(i % 5 != 0, results[i]);
+        }
+        // Cached results are bound to the key
+        boolean[] otherResults = RSAUtils.verifyAll(messages, otherKey);
+        for (boolean result : otherResults)
+            assertFalse(result);
+
+        RSAUtils.setVerificationCacheTtl(0, TimeUnit.SECONDS);
+        try {
+            assertTrue(RSAUtils.verifyAll(messages, keyPair.getPublic())[1]);
+        } finally {
+            RSAUtils.setVerificationCacheTtl(1, TimeUnit.MINUTES);
+        }
+        assertEquals(0, RSAUtils.verifyAll(new ArrayList<>(), keyPair.getPublic()).length);
+    }
 }